@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits JFR events. This class needs a JDK with jdk.jfr (8u262 or 11 and later), so it ships in the separate jfr jar.
+ * Lookup and prefix search events are disabled by default because they fire once per call.
+ */
+public class JfrLookupListener implements LookupListener {
+	@Name("net.arnx.dartsclone.Lookup")
+	@Label("Trie Lookup")
+	@Category("darts-clone")
+	@Enabled(false)
+	@StackTrace(false)
+	static class LookupEvent extends Event {
+		@Label("Depth")
+		int depth;
+		
+		@Label("Value")
+		int value;
+	}
+	
+	@Name("net.arnx.dartsclone.PrefixSearch")
+	@Label("Trie Prefix Search")
+	@Category("darts-clone")
+	@Enabled(false)
+	@StackTrace(false)
+	static class PrefixSearchEvent extends Event {
+		@Label("Key Length")
+		int length;
+		
+		@Label("Results")
+		int results;
+	}
+	
+	@Name("net.arnx.dartsclone.Load")
+	@Label("Trie Load")
+	@Category("darts-clone")
+	static class LoadEvent extends Event {
+		@Label("Units")
+		int units;
+		
+		@Label("Load Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long loadTime;
+	}
+	
+	@Override
+	public void onLookup(int depth, int value) {
+		LookupEvent event = new LookupEvent();
+		if (event.isEnabled()) {
+			event.depth = depth;
+			event.value = value;
+			event.commit();
+		}
+	}
+	
+	@Override
+	public void onPrefixSearch(int length, int results) {
+		PrefixSearchEvent event = new PrefixSearchEvent();
+		if (event.isEnabled()) {
+			event.length = length;
+			event.results = results;
+			event.commit();
+		}
+	}
+	
+	@Override
+	public void onLoad(int units, long nanos) {
+		LoadEvent event = new LoadEvent();
+		if (event.isEnabled()) {
+			event.units = units;
+			event.loadTime = nanos;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BatchLookupBenchmark {
+	static final int BATCH = 1024;
+	
+	@Param({ "ASCII", "URL" })
+	String keyset;
+	
+	// 4M keys give a unit array of well over 100 MB, far beyond any L3 cache.
+	@Param({ "4000000" })
+	int size;
+	
+	DoubleArrayTrie trie;
+	String[] queries;
+	byte[] data;
+	int[] offsets;
+	int[] out = new int[BATCH];
+	int cursor;
+	
+	@Setup
+	public void setup() {
+		String[] keys = Keysets.generate(keyset, size, 1L);
+		DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+		for (int i = 0; i < keys.length; i++) {
+			builder.put(keys[i], i);
+		}
+		trie = builder.build();
+		
+		// Every invocation takes the next batch of a shuffled copy, so paths are not left warm by the previous one.
+		Collections.shuffle(Arrays.asList(keys), new Random(2L));
+		queries = keys;
+		ByteArrayOutputStream concat = new ByteArrayOutputStream();
+		offsets = new int[keys.length + 1];
+		for (int i = 0; i < keys.length; i++) {
+			byte[] bytes = keys[i].getBytes(StandardCharsets.UTF_8);
+			concat.write(bytes, 0, bytes.length);
+			offsets[i + 1] = concat.size();
+		}
+		data = concat.toByteArray();
+	}
+	
+	private int next() {
+		int start = cursor;
+		cursor = (start + 2 * BATCH > queries.length) ? 0 : start + BATCH;
+		return start;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int getLoop() {
+		int start = next();
+		int sum = 0;
+		for (int i = start; i < start + BATCH; i++) {
+			sum += trie.get(queries[i]);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int getAll() {
+		int start = next();
+		trie.getAll(Arrays.copyOfRange(queries, start, start + BATCH), out);
+		return out[BATCH - 1];
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int getBytesLoop() {
+		int start = next();
+		int sum = 0;
+		for (int i = start; i < start + BATCH; i++) {
+			sum += trie.get(data, offsets[i], offsets[i + 1] - offsets[i]);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int getAllBytes() {
+		int start = next();
+		trie.getAll(data, Arrays.copyOfRange(offsets, start, start + BATCH + 1), out);
+		return out[BATCH - 1];
+	}
+}
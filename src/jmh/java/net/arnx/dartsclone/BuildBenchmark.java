@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BuildBenchmark {
+	@Param({ "ASCII", "CJK", "URL" })
+	String keyset;
+	
+	@Param({ "10000", "100000", "1000000" })
+	int size;
+	
+	String[] keys;
+	
+	@Setup
+	public void setup() {
+		keys = Keysets.generate(keyset, size, 1L);
+	}
+	
+	@Benchmark
+	public DoubleArrayTrie build() {
+		DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+		for (int i = 0; i < keys.length; i++) {
+			builder.put(keys[i], i);
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IoBenchmark {
+	@Param({ "ASCII", "URL" })
+	String keyset;
+	
+	@Param({ "1000000" })
+	int size;
+	
+	DoubleArrayTrie trie;
+	byte[] data;
+	Path path;
+	
+	@Setup
+	public void setup() throws IOException {
+		String[] keys = Keysets.generate(keyset, size, 1L);
+		DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+		for (int i = 0; i < keys.length; i++) {
+			builder.put(keys[i], i);
+		}
+		trie = builder.build();
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream(trie.size() * 4);
+		trie.writeTo(out);
+		data = out.toByteArray();
+		
+		path = Files.createTempFile("dartsclone", ".dat");
+		Files.write(path, data);
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+	}
+	
+	@Benchmark
+	public DoubleArrayTrie loadStream() throws IOException {
+		return DoubleArrayTrie.load(new ByteArrayInputStream(data));
+	}
+	
+	@Benchmark
+	public DoubleArrayTrie loadFile() throws IOException {
+		try (FileChannel channel = FileChannel.open(path)) {
+			return DoubleArrayTrie.load(channel);
+		}
+	}
+	
+	@Benchmark
+	public DoubleArrayTrie open() throws IOException {
+		return DoubleArrayTrie.open(path);
+	}
+	
+	@Benchmark
+	public int writeTo() throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		trie.writeTo(out);
+		return out.count;
+	}
+	
+	static class CountingOutputStream extends OutputStream {
+		int count;
+		
+		@Override
+		public void write(int b) {
+			count++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+final class Keysets {
+	private static final String[] HOSTS = { "example.com", "example.org", "arnx.net", "github.com", "docs.oracle.com" };
+	private static final String[] SEGMENTS = { "api", "v1", "v2", "users", "items", "search", "docs", "static", "img", "blog" };
+	private static final String[] DIRS = { "/usr/share/doc", "/usr/lib/jvm", "/var/lib/apt/lists", "/home/user/projects", "/opt/app/releases" };
+	private static final String[] EXTENSIONS = { ".java", ".class", ".txt", ".html", ".gz" };
+	
+	private Keysets() {
+	}
+	
+	static String[] generate(String type, int size, long seed) {
+		Random random = new Random(seed);
+		Set<String> keys = new LinkedHashSet<>();
+		StringBuilder sb = new StringBuilder();
+		while (keys.size() < size) {
+			sb.setLength(0);
+			switch (type) {
+			case "ASCII":
+				appendWord(sb, random, 'a', 26, 3 + random.nextInt(10));
+				break;
+			case "CJK":
+				appendWord(sb, random, '\u4E00', 3000, 1 + random.nextInt(4));
+				if (random.nextBoolean()) {
+					appendWord(sb, random, '\u3041', 83, 1 + random.nextInt(3));
+				}
+				break;
+			case "URL":
+				sb.append(random.nextBoolean() ? "https://" : "http://");
+				sb.append(HOSTS[random.nextInt(HOSTS.length)]);
+				for (int i = random.nextInt(4); i >= 0; i--) {
+					sb.append('/').append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+				}
+				sb.append('/');
+				appendWord(sb, random, 'a', 26, 4 + random.nextInt(8));
+				break;
+			case "PATH":
+				sb.append(DIRS[random.nextInt(DIRS.length)]);
+				for (int i = random.nextInt(3); i >= 0; i--) {
+					sb.append('/');
+					appendWord(sb, random, 'a', 26, 3 + random.nextInt(6));
+				}
+				sb.append('/');
+				appendWord(sb, random, 'a', 26, 6 + random.nextInt(12));
+				sb.append(EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+				break;
+			default:
+				throw new IllegalArgumentException("unknown keyset: " + type);
+			}
+			keys.add(sb.toString());
+		}
+		return keys.toArray(new String[keys.size()]);
+	}
+	
+	static String[] misses(String[] keys, long seed) {
+		Random random = new Random(seed);
+		String[] misses = new String[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			String key = keys[random.nextInt(keys.length)];
+			// A trailing control character is never generated, so every query misses at the last step.
+			misses[i] = key + '\u0001';
+		}
+		return misses;
+	}
+	
+	private static void appendWord(StringBuilder sb, Random random, char base, int range, int length) {
+		for (int i = 0; i < length; i++) {
+			sb.append((char)(base + random.nextInt(range)));
+		}
+	}
+}
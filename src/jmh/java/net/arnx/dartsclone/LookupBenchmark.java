@@ -0,0 +1,194 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LookupBenchmark {
+	static final int BATCH = 1024;
+	
+	@Param({ "ASCII", "CJK", "URL" })
+	String keyset;
+	
+	@Param({ "1000000" })
+	int size;
+	
+	DoubleArrayTrie trie;
+	Map<String, Integer> hashMap;
+	TreeMap<String, Integer> treeMap;
+	String[] hits;
+	String[] misses;
+	String[] texts;
+	String[] prefixes;
+	PredictiveCursor cursor = new PredictiveCursor();
+	long total;
+	PredictiveHandler sum = (key, length, value) -> {
+		total += value;
+		return true;
+	};
+	
+	@Setup
+	public void setup() {
+		String[] keys = Keysets.generate(keyset, size, 1L);
+		DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+		hashMap = new HashMap<>();
+		treeMap = new TreeMap<>();
+		for (int i = 0; i < keys.length; i++) {
+			builder.put(keys[i], i);
+			hashMap.put(keys[i], i);
+			treeMap.put(keys[i], i);
+		}
+		trie = builder.build();
+		
+		// Queries are shuffled copies of the keys. String caches its hash code, so the HashMap figures are a lower bound.
+		String[] shuffled = Keysets.generate(keyset, size, 1L);
+		Collections.shuffle(Arrays.asList(shuffled), new Random(2L));
+		hits = new String[BATCH];
+		texts = new String[BATCH];
+		prefixes = new String[BATCH];
+		for (int i = 0; i < BATCH; i++) {
+			hits[i] = new String(shuffled[i]);
+			texts[i] = shuffled[i] + shuffled[BATCH + i];
+			prefixes[i] = shuffled[i].substring(0, shuffled[i].length() - 1);
+		}
+		misses = Arrays.copyOf(Keysets.misses(shuffled, 3L), BATCH);
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int getHit() {
+		int sum = 0;
+		for (String key : hits) {
+			sum += trie.get(key);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int getMiss() {
+		int sum = 0;
+		for (String key : misses) {
+			sum += trie.get(key);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int findByCommonPrefix() {
+		int sum = 0;
+		for (String text : texts) {
+			sum += (int)trie.findByCommonPrefix(text).count();
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int commonPrefixSearch() {
+		int[] values = new int[16];
+		int sum = 0;
+		for (String text : texts) {
+			sum += trie.commonPrefixSearch(text, values, null, values.length);
+		}
+		return sum;
+	}
+	
+	// Run with -prof gc: the handler and cursor are fields, so this should allocate nothing.
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public long predictiveSearch() {
+		total = 0;
+		for (String prefix : prefixes) {
+			trie.predictiveSearch(prefix, 0, prefix.length(), cursor, sum);
+		}
+		return total;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	@Threads(Threads.MAX)
+	public int getHitThreads() {
+		return getHit();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int hashMapHit() {
+		int sum = 0;
+		for (String key : hits) {
+			sum += hashMap.get(key);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int hashMapMiss() {
+		int sum = 0;
+		for (String key : misses) {
+			sum += hashMap.getOrDefault(key, -1);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int treeMapHit() {
+		int sum = 0;
+		for (String key : hits) {
+			sum += treeMap.get(key);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int treeMapMiss() {
+		int sum = 0;
+		for (String key : misses) {
+			sum += treeMap.getOrDefault(key, -1);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MutableBenchmark {
+	static final int BATCH = 1024;
+	static final int EDITS = 1 << 16;
+	
+	@Param({ "URL", "ASCII" })
+	String keyset;
+	
+	@Param({ "1000000" })
+	int size;
+	
+	String[] keys;
+	String[] edits;
+	DoubleArrayTrie trie;
+	MutableDoubleArrayTrie mutable;
+	String[] queries;
+	String[] misses;
+	int cursor;
+	int editCursor;
+	
+	@Setup
+	public void setup() {
+		String[] generated = Keysets.generate(keyset, size + EDITS, 1L);
+		keys = Arrays.copyOf(generated, size);
+		edits = Arrays.copyOfRange(generated, size, size + EDITS);
+		
+		DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+		mutable = new MutableDoubleArrayTrie();
+		for (int i = 0; i < keys.length; i++) {
+			builder.put(keys[i], i);
+			mutable.put(keys[i], i);
+		}
+		trie = builder.build();
+		
+		// JMH has no size metric, so the unit counts go to the setup output.
+		TrieStats stats = TrieStats.of(mutable.freeze());
+		System.out.println();
+		System.out.println(keyset + ": DoubleArrayTrie " + trie.size() + " units, MutableDoubleArrayTrie "
+				+ mutable.unitSize() + " units (fill ratio " + String.format("%.3f", stats.fillRatio()) + ")");
+		
+		queries = keys.clone();
+		Collections.shuffle(Arrays.asList(queries), new Random(2L));
+		misses = Keysets.misses(queries, 3L);
+	}
+	
+	private int next() {
+		int start = cursor;
+		cursor = (start + 2 * BATCH > queries.length) ? 0 : start + BATCH;
+		return start;
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public MutableDoubleArrayTrie insert() {
+		MutableDoubleArrayTrie mdat = new MutableDoubleArrayTrie();
+		for (int i = 0; i < keys.length; i++) {
+			mdat.put(keys[i], i);
+		}
+		return mdat;
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public DoubleArrayTrie build() {
+		DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+		for (int i = 0; i < keys.length; i++) {
+			builder.put(keys[i], i);
+		}
+		return builder.build();
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public DoubleArrayTrie freeze() {
+		return mutable.freeze();
+	}
+	
+	// Adds keys that are not in the dictionary and takes them out again, so the dictionary stays the same size.
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int putRemove() {
+		int start = editCursor;
+		editCursor = (start + 2 * BATCH > edits.length) ? 0 : start + BATCH;
+		int sum = 0;
+		for (int i = start; i < start + BATCH; i++) {
+			sum += mutable.put(edits[i], i);
+		}
+		for (int i = start; i < start + BATCH; i++) {
+			sum += mutable.remove(edits[i]);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int trieHit() {
+		int start = next();
+		int sum = 0;
+		for (int i = start; i < start + BATCH; i++) {
+			sum += trie.get(queries[i]);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int mutableHit() {
+		int start = next();
+		int sum = 0;
+		for (int i = start; i < start + BATCH; i++) {
+			sum += mutable.get(queries[i]);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int trieMiss() {
+		int start = next();
+		int sum = 0;
+		for (int i = start; i < start + BATCH; i++) {
+			sum += trie.get(misses[i]);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int mutableMiss() {
+		int start = next();
+		int sum = 0;
+		for (int i = start; i < start + BATCH; i++) {
+			sum += mutable.get(misses[i]);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParallelLookupBenchmark {
+	static final int QUERIES = 1 << 20;
+	
+	@Param({ "ASCII", "URL" })
+	String keyset;
+	
+	@Param({ "1000000" })
+	int size;
+	
+	// Worker count of the pool the lookups run in; compare the figures to check the scaling.
+	@Param({ "1", "2", "4", "8" })
+	int parallelism;
+	
+	DoubleArrayTrie trie;
+	List<String> queries;
+	int[] out = new int[QUERIES];
+	ForkJoinPool pool;
+	
+	@Setup
+	public void setup() {
+		String[] keys = Keysets.generate(keyset, size, 1L);
+		DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+		for (int i = 0; i < keys.length; i++) {
+			builder.put(keys[i], i);
+		}
+		trie = builder.build();
+		
+		Random random = new Random(2L);
+		String[] array = new String[QUERIES];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = keys[random.nextInt(keys.length)];
+		}
+		queries = Arrays.asList(array);
+		pool = new ForkJoinPool(parallelism);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+	
+	// Parallel streams run in the pool of the task that starts them.
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int lookupAllList() throws InterruptedException, ExecutionException {
+		pool.submit(() -> trie.lookupAll(queries, out)).get();
+		return out[QUERIES - 1];
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int lookupAllStream() throws InterruptedException, ExecutionException {
+		return pool.submit(() -> trie.lookupAll(queries.parallelStream()).sum()).get();
+	}
+}
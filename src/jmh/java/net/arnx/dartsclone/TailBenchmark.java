@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TailBenchmark {
+	static final int BATCH = 1024;
+	
+	@Param({ "URL", "PATH", "ASCII" })
+	String keyset;
+	
+	@Param({ "1000000" })
+	int size;
+	
+	DoubleArrayTrie trie;
+	TailDoubleArrayTrie tail;
+	String[] queries;
+	String[] misses;
+	int cursor;
+	
+	@Setup
+	public void setup() throws IOException {
+		String[] keys = Keysets.generate(keyset, size, 1L);
+		DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+		TailDoubleArrayTrie.Builder tailBuilder = new TailDoubleArrayTrie.Builder();
+		for (int i = 0; i < keys.length; i++) {
+			builder.put(keys[i], i);
+			tailBuilder.put(keys[i], i);
+		}
+		trie = builder.build();
+		tail = tailBuilder.build();
+		
+		// JMH has no size metric, so the serialized sizes go to the setup output.
+		ByteArrayOutputStream trieOut = new ByteArrayOutputStream();
+		trie.writeTo(trieOut);
+		ByteArrayOutputStream tailOut = new ByteArrayOutputStream();
+		tail.writeTo(tailOut);
+		System.out.println();
+		System.out.println(keyset + ": DoubleArrayTrie " + trieOut.size() + " bytes, " + tail + " " + tailOut.size() + " bytes");
+		
+		Collections.shuffle(Arrays.asList(keys), new Random(2L));
+		queries = keys;
+		misses = Keysets.misses(keys, 3L);
+	}
+	
+	private int next() {
+		int start = cursor;
+		cursor = (start + 2 * BATCH > queries.length) ? 0 : start + BATCH;
+		return start;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int trieHit() {
+		int start = next();
+		int sum = 0;
+		for (int i = start; i < start + BATCH; i++) {
+			sum += trie.get(queries[i]);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int tailHit() {
+		int start = next();
+		int sum = 0;
+		for (int i = start; i < start + BATCH; i++) {
+			sum += tail.get(queries[i]);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int trieMiss() {
+		int start = next();
+		int sum = 0;
+		for (int i = start; i < start + BATCH; i++) {
+			sum += trie.get(misses[i]);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int tailMiss() {
+		int start = next();
+		int sum = 0;
+		for (int i = start; i < start + BATCH; i++) {
+			sum += tail.get(misses[i]);
+		}
+		return sum;
+	}
+}
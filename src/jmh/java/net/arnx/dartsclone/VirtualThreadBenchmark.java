@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// One lookup per task, as in a server that handles each request on its own virtual thread.
+// Run with -prof gc to check that lookups allocate nothing beyond the threads themselves.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class VirtualThreadBenchmark {
+	static final int TASKS = 1000000;
+	
+	@Param({ "ASCII", "URL" })
+	String keyset;
+	
+	@Param({ "1000000" })
+	int size;
+	
+	DoubleArrayTrie trie;
+	String[] queries;
+	ExecutorService virtual;
+	ExecutorService platform;
+	
+	@Setup
+	public void setup() {
+		String[] keys = Keysets.generate(keyset, size, 1L);
+		DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+		for (int i = 0; i < keys.length; i++) {
+			builder.put(keys[i], i);
+		}
+		trie = builder.build();
+		
+		Random random = new Random(2L);
+		queries = new String[TASKS];
+		for (int i = 0; i < queries.length; i++) {
+			queries[i] = keys[random.nextInt(keys.length)];
+		}
+		
+		// The sources target Java 8, so the Java 21 factory is looked up reflectively.
+		try {
+			virtual = (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			virtual = null;
+		}
+		platform = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	}
+	
+	@TearDown
+	public void tearDown() {
+		if (virtual != null) {
+			virtual.shutdown();
+		}
+		platform.shutdown();
+	}
+	
+	@Benchmark
+	public long virtualThreads() throws InterruptedException {
+		if (virtual == null) {
+			throw new UnsupportedOperationException("virtual threads require Java 21 or later.");
+		}
+		return run(virtual);
+	}
+	
+	@Benchmark
+	public long platformPool() throws InterruptedException {
+		return run(platform);
+	}
+	
+	private long run(ExecutorService executor) throws InterruptedException {
+		LongAdder sum = new LongAdder();
+		CountDownLatch latch = new CountDownLatch(TASKS);
+		for (String query : queries) {
+			executor.execute(() -> {
+				sum.add(trie.get(query));
+				latch.countDown();
+			});
+		}
+		latch.await();
+		return sum.sum();
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class AhoCorasickTrie {
+	private static final int HEADER_SIZE = 4;
+	
+	public static AhoCorasickTrie wrap(int[] array) {
+		return new AhoCorasickTrie(link(array));
+	}
+	
+	public static class Builder {
+		private DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+		
+		public Builder put(String key, int value) {
+			builder.put(key, value);
+			return this;
+		}
+		
+		public AhoCorasickTrie build() {
+			return wrap(toArray());
+		}
+		
+		public int[] toArray() {
+			// Failure links depend on the whole path, so subtrees must not be shared.
+			return builder.toArray(false);
+		}
+	}
+	
+	public static AhoCorasickTrie load(InputStream in) throws IOException {
+		return load(Channels.newChannel(in));
+	}
+	
+	public static AhoCorasickTrie load(ReadableByteChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		DoubleArrayMap.readFully(channel, header);
+		
+		long size = checkHeader(header);
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("failed to load: too large size");
+		}
+		ByteBuffer buf = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+		header.flip();
+		buf.put(header);
+		DoubleArrayMap.readFully(channel, buf);
+		buf.flip();
+		return new AhoCorasickTrie(buf);
+	}
+	
+	public static AhoCorasickTrie load(ByteBuffer src) throws IOException {
+		ByteBuffer dup = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		if (dup.remaining() < HEADER_SIZE) {
+			throw new IOException("failed to load: broken header");
+		}
+		long size = checkHeader(DoubleArrayMap.slice(dup, dup.position(), HEADER_SIZE));
+		if (size > dup.remaining()) {
+			throw new IOException("failed to load: unexpected end of buffer");
+		}
+		
+		ByteBuffer buf = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+		dup.limit(dup.position() + (int)size);
+		buf.put(dup);
+		buf.flip();
+		src.position(src.position() + (int)size);
+		return new AhoCorasickTrie(buf);
+	}
+	
+	public static AhoCorasickTrie open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return map(channel);
+		}
+	}
+	
+	public static AhoCorasickTrie map(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("failed to map file: too large size");
+		}
+		
+		if (size < HEADER_SIZE) {
+			throw new IOException("failed to map file: broken header");
+		}
+		
+		// The links are stored next to the units, so nothing is computed or copied here.
+		ByteBuffer buf = channel.map(MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+		if (checkHeader(buf) != size) {
+			throw new IOException("failed to map file: broken size");
+		}
+		return new AhoCorasickTrie(buf);
+	}
+	
+	private static long checkHeader(ByteBuffer header) throws IOException {
+		int numUnits = header.getInt(0);
+		if (numUnits < 0) {
+			throw new IOException("failed to load: broken header");
+		}
+		return HEADER_SIZE + 16L * numUnits;
+	}
+	
+	// Lays out the units followed by the failure link, the output link and the depth of each unit.
+	private static ByteBuffer link(int[] units) {
+		DoubleArrayTrie trie = DoubleArrayTrie.wrap(units);
+		int[] failures = new int[units.length];
+		int[] outputs = new int[units.length];
+		int[] depths = new int[units.length];
+		
+		Arrays.fill(failures, -1);
+		failures[0] = 0;
+		
+		int[] queue = new int[units.length];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = 0;
+		while (head < tail) {
+			int id = queue[head++];
+			for (int label = 1; label <= 0xFF; label++) {
+				int child = trie.transit(id, label);
+				if (child < 0) {
+					continue;
+				}
+				if (failures[child] != -1) {
+					throw new IllegalArgumentException("failed to build links: shared node");
+				}
+				
+				int failure = 0;
+				if (id != 0) {
+					int state = failures[id];
+					while (true) {
+						int next = trie.transit(state, label);
+						if (next >= 0) {
+							failure = next;
+							break;
+						} else if (state == 0) {
+							break;
+						}
+						state = failures[state];
+					}
+				}
+				
+				failures[child] = failure;
+				outputs[child] = (trie.leafValue(failure) >= 0) ? failure : outputs[failure];
+				depths[child] = depths[id] + 1;
+				queue[tail++] = child;
+			}
+		}
+		
+		long size = HEADER_SIZE + 16L * units.length;
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalStateException("trie is too large.");
+		}
+		
+		ByteBuffer buf = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(units.length);
+		for (int[] array : new int[][] { units, failures, outputs, depths }) {
+			buf.asIntBuffer().put(array);
+			buf.position(buf.position() + array.length * 4);
+		}
+		buf.flip();
+		return buf;
+	}
+	
+	private final ByteBuffer buf;
+	private final DoubleArrayTrie trie;
+	private final IntBuffer failures;
+	private final IntBuffer outputs;
+	private final IntBuffer depths;
+	
+	private AhoCorasickTrie(ByteBuffer buf) {
+		this.buf = buf;
+		
+		int numUnits = buf.getInt(0);
+		
+		int position = HEADER_SIZE;
+		this.trie = DoubleArrayTrie.wrap(DoubleArrayMap.slice(buf, position, numUnits * 4).asIntBuffer());
+		position += numUnits * 4;
+		this.failures = DoubleArrayMap.slice(buf, position, numUnits * 4).asIntBuffer();
+		position += numUnits * 4;
+		this.outputs = DoubleArrayMap.slice(buf, position, numUnits * 4).asIntBuffer();
+		position += numUnits * 4;
+		this.depths = DoubleArrayMap.slice(buf, position, numUnits * 4).asIntBuffer();
+	}
+	
+	public DoubleArrayTrie trie() {
+		return trie;
+	}
+	
+	public void scan(String text, MatchHandler handler) {
+		scan(text, 0, text.length(), handler);
+	}
+	
+	public void scan(CharSequence text, int start, int end, MatchHandler handler) {
+		DoubleArrayTrie.checkRange(text.length(), start, end);
+		
+		int id = 0;
+		for (int i = start; i < end; ) {
+			int cp = DoubleArrayTrie.codePointAt(text, i, end);
+			i += Character.charCount(cp);
+			
+			if (cp != '\0' && cp < 0x80) {
+				id = next(id, cp);
+			} else if (cp < 0x800) {
+				id = next(id, ((cp >> 6) & 0x1F) | 0xC0);
+				id = next(id, (cp & 0x3F) | 0x80);
+			} else if (cp < 0x10000) {
+				id = next(id, ((cp >> 12) & 0x0F) | 0xE0);
+				id = next(id, ((cp >> 6) & 0x3F) | 0x80);
+				id = next(id, (cp & 0x3F) | 0x80);
+			} else {
+				id = next(id, (cp >> 18) | 0xF0);
+				id = next(id, ((cp >> 12) & 0x3F) | 0x80);
+				id = next(id, ((cp >> 6) & 0x3F) | 0x80);
+				id = next(id, (cp & 0x3F) | 0x80);
+			}
+			
+			for (int match = id; match != 0; match = outputs.get(match)) {
+				int value = trie.leafValue(match);
+				if (value >= 0) {
+					handler.handle(charBegin(text, start, i, depths.get(match)), i, value);
+				}
+			}
+		}
+	}
+	
+	public void scan(byte[] text, int off, int len, MatchHandler handler) {
+		DoubleArrayTrie.checkRange(text, off, len);
+		
+		int id = 0;
+		for (int i = off; i < off + len; i++) {
+			int b = text[i] & 0xFF;
+			if (b == 0) {
+				id = next(id, 0xC0);
+				id = next(id, 0x80);
+			} else {
+				id = next(id, b);
+			}
+			
+			for (int match = id; match != 0; match = outputs.get(match)) {
+				int value = trie.leafValue(match);
+				if (value >= 0) {
+					handler.handle(byteBegin(text, i + 1, depths.get(match)), i + 1, value);
+				}
+			}
+		}
+	}
+	
+	public void writeTo(OutputStream out) throws IOException {
+		writeTo(Channels.newChannel(out));
+	}
+	
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		ByteBuffer src = buf.duplicate();
+		while (src.hasRemaining()) {
+			channel.write(src);
+		}
+	}
+	
+	private int next(int id, int label) {
+		while (true) {
+			int child = trie.transit(id, label);
+			if (child >= 0) {
+				return child;
+			} else if (id == 0) {
+				return 0;
+			}
+			id = failures.get(id);
+		}
+	}
+	
+	// Depths are counted in escaped UTF-8 bytes, so walk back over the text to find the beginning.
+	private static int charBegin(CharSequence text, int start, int end, int depth) {
+		int i = end;
+		while (depth > 0) {
+			char c = text.charAt(--i);
+			if (Character.isLowSurrogate(c) && i > start && Character.isHighSurrogate(text.charAt(i - 1))) {
+				i--;
+				depth -= 4;
+			} else if (c != '\0' && c < '\u0080') {
+				depth -= 1;
+			} else if (c < '\u0800') {
+				depth -= 2;
+			} else {
+				depth -= 3;
+			}
+		}
+		return i;
+	}
+	
+	private static int byteBegin(byte[] text, int end, int depth) {
+		int i = end;
+		while (depth > 0) {
+			depth -= (text[--i] == 0) ? 2 : 1;
+		}
+		return i;
+	}
+
+	@Override
+	public int hashCode() {
+		return buf.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (getClass() != obj.getClass()) {
+			return false;
+		}
+		AhoCorasickTrie other = (AhoCorasickTrie) obj;
+		return buf.equals(other.buf);
+	}
+	
+	@Override
+	public String toString() {
+		return trie.toString();
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+/**
+ * Receives build telemetry. With a parallel build, INSERT progress is reported from worker threads.
+ * Returning true from isCancelled() makes the build throw a CancellationException at its next checkpoint.
+ */
+public interface BuildListener {
+	enum Phase {
+		SORT,
+		INSERT,
+		FINISH,
+		ARRANGE
+	}
+	
+	default void onPhaseStart(Phase phase) {
+	}
+	
+	default void onProgress(Phase phase, long done, long total) {
+	}
+	
+	default void onPhaseEnd(Phase phase, long nanos) {
+	}
+	
+	default void onDawg(int units, int intersections, int tableExpansions) {
+	}
+	
+	default void onComplete(int keys, int units) {
+	}
+	
+	default boolean isCancelled() {
+		return false;
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import net.arnx.dartsclone.util.IntList;
+
+public class DoubleArrayMap {
+	private static final int HEADER_SIZE = 12;
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+	
+	public static class Builder {
+		private DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+		private IntList offsets = new IntList();
+		private byte[] payloads = new byte[1024];
+		private int payloadSize;
+		
+		public Builder() {
+			offsets.add(0);
+		}
+		
+		public Builder put(String key, byte[] value) {
+			return put(key, value, 0, value.length);
+		}
+		
+		public Builder put(String key, byte[] value, int off, int len) {
+			DoubleArrayTrie.checkRange(value, off, len);
+			if (len > MAX_ARRAY_SIZE - payloadSize) {
+				throw new IllegalStateException("payloads are too large.");
+			}
+			
+			builder.put(key, offsets.size() - 1);
+			if (payloadSize + len > payloads.length) {
+				long capacity = Math.max((long)payloadSize + len, payloads.length + (payloads.length >> 1));
+				payloads = Arrays.copyOf(payloads, (int)Math.min(capacity, MAX_ARRAY_SIZE));
+			}
+			System.arraycopy(value, off, payloads, payloadSize, len);
+			payloadSize += len;
+			offsets.add(payloadSize);
+			return this;
+		}
+		
+		public DoubleArrayMap build() {
+			int[] units = builder.toArray();
+			
+			long size = HEADER_SIZE + 4L * units.length + 4L * offsets.size() + payloadSize;
+			if (size > Integer.MAX_VALUE) {
+				throw new IllegalStateException("map is too large.");
+			}
+			
+			ByteBuffer buf = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+			buf.putInt(units.length);
+			buf.putInt(offsets.size() - 1);
+			buf.putInt(payloadSize);
+			buf.asIntBuffer().put(units);
+			buf.position(buf.position() + units.length * 4);
+			buf.asIntBuffer().put(offsets.toArray());
+			buf.position(buf.position() + offsets.size() * 4);
+			buf.put(payloads, 0, payloadSize);
+			buf.flip();
+			return new DoubleArrayMap(buf);
+		}
+	}
+	
+	public static DoubleArrayMap load(InputStream in) throws IOException {
+		return load(Channels.newChannel(in));
+	}
+	
+	public static DoubleArrayMap load(ReadableByteChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, header);
+		
+		long size = checkHeader(header);
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("failed to load: too large size");
+		}
+		ByteBuffer buf = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+		header.flip();
+		buf.put(header);
+		readFully(channel, buf);
+		buf.flip();
+		return new DoubleArrayMap(buf);
+	}
+	
+	public static DoubleArrayMap open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return map(channel);
+		}
+	}
+	
+	public static DoubleArrayMap map(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("failed to map file: too large size");
+		}
+		
+		if (size < HEADER_SIZE) {
+			throw new IOException("failed to map file: broken header");
+		}
+		
+		ByteBuffer buf = channel.map(MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+		if (checkHeader(buf) != size) {
+			throw new IOException("failed to map file: broken size");
+		}
+		return new DoubleArrayMap(buf);
+	}
+	
+	private static long checkHeader(ByteBuffer header) throws IOException {
+		int numUnits = header.getInt(0);
+		int numValues = header.getInt(4);
+		int payloadSize = header.getInt(8);
+		if (numUnits < 0 || numValues < 0 || payloadSize < 0) {
+			throw new IOException("failed to load: broken header");
+		}
+		return HEADER_SIZE + 4L * numUnits + 4L * (numValues + 1L) + payloadSize;
+	}
+	
+	static void readFully(ReadableByteChannel channel, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			if (channel.read(buf) == -1) {
+				throw new IOException("failed to load: unexpected end of stream");
+			}
+		}
+	}
+	
+	static ByteBuffer slice(ByteBuffer buf, int position, int length) {
+		ByteBuffer dup = buf.duplicate();
+		dup.position(position);
+		dup.limit(position + length);
+		return dup.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	private final ByteBuffer buf;
+	private final DoubleArrayTrie trie;
+	private final IntBuffer offsets;
+	private final ByteBuffer payloads;
+	
+	private DoubleArrayMap(ByteBuffer buf) {
+		this.buf = buf;
+		
+		int numUnits = buf.getInt(0);
+		int numValues = buf.getInt(4);
+		int payloadSize = buf.getInt(8);
+		
+		int position = HEADER_SIZE;
+		this.trie = DoubleArrayTrie.wrap(slice(buf, position, numUnits * 4).asIntBuffer());
+		position += numUnits * 4;
+		this.offsets = slice(buf, position, (numValues + 1) * 4).asIntBuffer();
+		position += (numValues + 1) * 4;
+		this.payloads = slice(buf, position, payloadSize).asReadOnlyBuffer();
+	}
+	
+	public DoubleArrayTrie trie() {
+		return trie;
+	}
+	
+	public ByteBuffer get(String key) {
+		return payload(trie.get(key));
+	}
+	
+	public ByteBuffer get(CharSequence key, int start, int end) {
+		return payload(trie.get(key, start, end));
+	}
+	
+	public ByteBuffer get(byte[] key, int off, int len) {
+		return payload(trie.get(key, off, len));
+	}
+	
+	public ByteBuffer get(ByteBuffer key) {
+		return payload(trie.get(key));
+	}
+	
+	public ByteBuffer payload(int index) {
+		if (index < 0) {
+			return null;
+		}
+		
+		ByteBuffer dup = payloads.duplicate();
+		dup.limit(offsets.get(index + 1));
+		dup.position(offsets.get(index));
+		return dup.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	public int size() {
+		return offsets.limit() - 1;
+	}
+	
+	public void writeTo(OutputStream out) throws IOException {
+		writeTo(Channels.newChannel(out));
+	}
+	
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		ByteBuffer src = buf.duplicate();
+		while (src.hasRemaining()) {
+			channel.write(src);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return buf.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (getClass() != obj.getClass()) {
+			return false;
+		}
+		DoubleArrayMap other = (DoubleArrayMap) obj;
+		if (!buf.equals(other.buf)) {
+			return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public String toString() {
+		return "DoubleArrayMap [size=" + size() + ", trie=" + trie.size() + " units, payloads=" + payloads.limit() + " bytes]";
+	}
+}
@@ -15,26 +15,82 @@
  */
 package net.arnx.dartsclone;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import net.arnx.dartsclone.BuildListener.Phase;
+import net.arnx.dartsclone.internal.DawgBuilder;
 import net.arnx.dartsclone.internal.DoubleArrayBuilder;
+import net.arnx.dartsclone.internal.KeySet;
+import net.arnx.dartsclone.util.HeapIntStorage;
 import net.arnx.dartsclone.util.IntList;
+import net.arnx.dartsclone.util.IntStorageFactory;
 
 public class DoubleArrayTrie {
+	private static final int CHUNK_SIZE = 1 << 16;
+	
 	public static DoubleArrayTrie wrap(int[] array) {
-		return new DoubleArrayTrie(array);
+		return new DoubleArrayTrie(IntBuffer.wrap(array));
 	}
 	
 	public static class Builder {
-		private List<DoubleArrayEntry> keyset = new ArrayList<>();
+		private static final int PROGRESS_MASK = (1 << 16) - 1;
+		private static final BuildListener NO_LISTENER = new BuildListener() {
+		};
+		
+		private KeySet keyset = new KeySet();
 		private byte[] buf = new byte[256];
+		private boolean parallel;
+		private IntStorageFactory storage = HeapIntStorage::new;
+		private BuildListener listener;
+		
+		public Builder parallel(boolean parallel) {
+			this.parallel = parallel;
+			return this;
+		}
+		
+		public Builder storage(IntStorageFactory storage) {
+			this.storage = storage;
+			return this;
+		}
+		
+		public Builder listener(BuildListener listener) {
+			this.listener = listener;
+			return this;
+		}
 		
 		public Builder put(String key, int value) {
 			if (buf.length < key.length() * 3) {
@@ -42,180 +98,1048 @@ public class DoubleArrayTrie {
 			}
 			
 			int length = escapeKey(key, buf);
-			keyset.add(new DoubleArrayEntry(Arrays.copyOf(buf, length), value));
+			keyset.add(buf, 0, length, value);
 			return this;
 		}
 		
 		public DoubleArrayTrie build() {
-			return new DoubleArrayTrie(toArray());
+			return wrap(toArray());
 		}
 		
 		public int[] toArray() {
-			Collections.sort(keyset);
-		    
-			DoubleArrayBuilder builder = new DoubleArrayBuilder();
-			for (DoubleArrayEntry entry : keyset) {
-				builder.append(entry.key, entry.key.length, entry.value);
+			return toArray(true);
+		}
+		
+		int[] toArray(boolean shareSubtrees) {
+			return toArray(shareSubtrees, null);
+		}
+		
+		int[] toArray(boolean shareSubtrees, IntList parents) {
+			BuildListener listener = (this.listener != null) ? this.listener : NO_LISTENER;
+			
+			long start = startPhase(listener, Phase.SORT);
+			keyset.sort(parallel);
+			endPhase(listener, Phase.SORT, start);
+			
+			DoubleArrayBuilder builder = new DoubleArrayBuilder(shareSubtrees, storage);
+			builder.setParents(parents);
+			
+			DawgBuilder dawg;
+			if (parallel) {
+				dawg = insertInParallel(listener);
+			} else {
+				start = startPhase(listener, Phase.INSERT);
+				dawg = builder.dawg();
+				byte[] bytes = keyset.bytes();
+				for (int i = 0; i < keyset.size(); i++) {
+					if ((i & PROGRESS_MASK) == 0 && i > 0) {
+						checkpoint(listener, Phase.INSERT, i, keyset.size());
+					}
+					dawg.insert(bytes, keyset.offset(i), keyset.length(i), keyset.value(i));
+				}
+				checkpoint(listener, Phase.INSERT, keyset.size(), keyset.size());
+				endPhase(listener, Phase.INSERT, start);
+				
+				start = startPhase(listener, Phase.FINISH);
+				dawg.finish();
+				endPhase(listener, Phase.FINISH, start);
+			}
+			listener.onDawg(dawg.size(), dawg.numIntersections(), dawg.numTableExpansions());
+			
+			start = startPhase(listener, Phase.ARRANGE);
+			if (listener != NO_LISTENER) {
+				builder.setCheckpoint(n -> checkpoint(listener, Phase.ARRANGE, n, -1));
+			}
+			int[] units = builder.build(dawg);
+			endPhase(listener, Phase.ARRANGE, start);
+			
+			listener.onComplete(keyset.size(), units.length);
+			return units;
+		}
+		
+		private DawgBuilder insertInParallel(BuildListener listener) {
+			long start = startPhase(listener, Phase.INSERT);
+			byte[] bytes = keyset.bytes();
+			
+			// Keys sharing a leading byte stay in the same shard, so shards never overlap below the root.
+			int target = Math.max(1, keyset.size() / (ForkJoinPool.getCommonPoolParallelism() * 4));
+			IntList bounds = new IntList();
+			bounds.add(0);
+			for (int begin = 0; begin < keyset.size(); ) {
+				int end = Math.min(begin + target, keyset.size());
+				while (end < keyset.size() && bytes[keyset.offset(end)] == bytes[keyset.offset(end - 1)]) {
+					end++;
+				}
+				bounds.add(end);
+				begin = end;
+			}
+			
+			// Each shard is finished by its own worker, so the INSERT phase also covers the shard FINISH work.
+			AtomicLong done = new AtomicLong();
+			DawgBuilder[] dawgs = new DawgBuilder[bounds.size() - 1];
+			IntStream.range(0, dawgs.length).parallel().forEach(i -> {
+				DawgBuilder dawg = new DawgBuilder(storage);
+				dawg.init();
+				for (int j = bounds.get(i); j < bounds.get(i + 1); j++) {
+					dawg.insert(bytes, keyset.offset(j), keyset.length(j), keyset.value(j));
+				}
+				dawg.finish();
+				dawgs[i] = dawg;
+				checkpoint(listener, Phase.INSERT, done.addAndGet(bounds.get(i + 1) - bounds.get(i)), keyset.size());
+			});
+			endPhase(listener, Phase.INSERT, start);
+			
+			start = startPhase(listener, Phase.FINISH);
+			DawgBuilder dawg = DawgBuilder.merge(storage, dawgs);
+			endPhase(listener, Phase.FINISH, start);
+			return dawg;
+		}
+		
+		private static long startPhase(BuildListener listener, Phase phase) {
+			checkpoint(listener, phase, 0, -1);
+			listener.onPhaseStart(phase);
+			return System.nanoTime();
+		}
+		
+		private static void endPhase(BuildListener listener, Phase phase, long start) {
+			listener.onPhaseEnd(phase, System.nanoTime() - start);
+		}
+		
+		private static void checkpoint(BuildListener listener, Phase phase, long done, long total) {
+			if (listener.isCancelled()) {
+				throw new CancellationException("build is cancelled in " + phase + " phase.");
+			}
+			if (done > 0) {
+				listener.onProgress(phase, done, total);
 			}
-			return builder.build();
 		}
 	}
 	
-	private static class DoubleArrayEntry implements Comparable<DoubleArrayEntry> {
-		byte[] key;
-		int value;
+	public static class SortedBuilder {
+		private DoubleArrayBuilder builder;
+		private boolean built;
+		private byte[] buf = new byte[256];
+		private IntStorageFactory storage = HeapIntStorage::new;
 		
-		public DoubleArrayEntry(byte[] key, int value) {
-			if (key == null || key.length == 0) {
+		public SortedBuilder storage(IntStorageFactory storage) {
+			if (builder != null || built) {
+				throw new IllegalStateException("storage must be set before the first put.");
+			}
+			this.storage = storage;
+			return this;
+		}
+		
+		public SortedBuilder put(String key, int value) {
+			if (built) {
+				throw new IllegalStateException("builder is already built.");
+			}
+			if (buf.length < key.length() * 3) {
+				buf = new byte[key.length() * 3];
+			}
+			
+			int length = escapeKey(key, buf);
+			if (length == 0) {
 				throw new IllegalArgumentException("key must not be empty.");
 			}
 			if (value < 0) {
 				throw new IllegalArgumentException("value must not be negative.");
 			}
+			if (builder == null) {
+				builder = new DoubleArrayBuilder(true, storage);
+			}
+			builder.append(buf, length, value);
+			return this;
+		}
+		
+		public DoubleArrayTrie build() {
+			return wrap(toArray());
+		}
+		
+		public int[] toArray() {
+			if (built) {
+				throw new IllegalStateException("builder is already built.");
+			}
+			if (builder == null) {
+				builder = new DoubleArrayBuilder(true, storage);
+			}
+			int[] array = builder.build();
+			builder = null;
+			built = true;
+			return array;
+		}
+	}
+	
+	public static class ExternalBuilder implements Closeable {
+		private static final long DEFAULT_RUN_SIZE = 64L * 1024 * 1024;
+		
+		private final Path dir;
+		private final long runSize;
+		
+		private KeySet keyset = new KeySet();
+		private List<Path> runs = new ArrayList<>();
+		private byte[] buf = new byte[256];
+		private IntStorageFactory storage = HeapIntStorage::new;
+		
+		public ExternalBuilder() {
+			this(Paths.get(System.getProperty("java.io.tmpdir")), DEFAULT_RUN_SIZE);
+		}
+		
+		public ExternalBuilder(Path dir, long runSize) {
+			if (runSize <= 0) {
+				throw new IllegalArgumentException("runSize must be positive.");
+			}
+			this.dir = dir;
+			this.runSize = runSize;
+		}
+		
+		public ExternalBuilder storage(IntStorageFactory storage) {
+			this.storage = storage;
+			return this;
+		}
+		
+		public ExternalBuilder put(String key, int value) throws IOException {
+			if (buf.length < key.length() * 3) {
+				buf = new byte[key.length() * 3];
+			}
 			
-			this.key = key;
-			this.value = value;
+			int length = escapeKey(key, buf);
+			keyset.add(buf, 0, length, value);
+			if (keyset.byteSize() >= runSize) {
+				spill();
+			}
+			return this;
 		}
 		
-		@Override
-		public int compareTo(DoubleArrayEntry o) {
-			int result = 0;
-			int min = Math.min(key.length, o.key.length);
-	        for (int i = 0; i < min; i++) {
-	          result = (key[i] & 0xFF) - (o.key[i] & 0xFF);
-	          if (result != 0) {
-	            return result;
-	          }
-	        }
-	        return key.length - o.key.length;
+		public DoubleArrayTrie build() throws IOException {
+			return wrap(toArray());
 		}
 		
-		@Override
-		public int hashCode() {
-			return Arrays.hashCode(key);
+		public int[] toArray() throws IOException {
+			DoubleArrayBuilder builder = new DoubleArrayBuilder(true, storage);
+			if (runs.isEmpty()) {
+				keyset.sort(false);
+				byte[] bytes = keyset.bytes();
+				for (int i = 0; i < keyset.size(); i++) {
+					builder.append(bytes, keyset.offset(i), keyset.length(i), keyset.value(i));
+				}
+				return builder.build();
+			}
+			
+			spill();
+			
+			List<RunReader> readers = new ArrayList<>(runs.size());
+			try {
+				PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size());
+				for (int i = 0; i < runs.size(); i++) {
+					RunReader reader = new RunReader(runs.get(i), i);
+					readers.add(reader);
+					if (reader.next()) {
+						queue.add(reader);
+					}
+				}
+				
+				while (!queue.isEmpty()) {
+					RunReader reader = queue.poll();
+					builder.append(reader.key, reader.length, reader.value);
+					if (reader.next()) {
+						queue.add(reader);
+					}
+				}
+			} finally {
+				for (RunReader reader : readers) {
+					reader.close();
+				}
+			}
+			return builder.build();
 		}
-
+		
 		@Override
-		public boolean equals(Object obj) {
-			if (this == obj) {
-				return true;
+		public void close() throws IOException {
+			keyset.clear();
+			for (Path run : runs) {
+				Files.deleteIfExists(run);
 			}
-			if (obj == null || getClass() != obj.getClass()) {
-				return false;
+			runs.clear();
+		}
+		
+		private void spill() throws IOException {
+			if (keyset.isEmpty()) {
+				return;
 			}
-			DoubleArrayEntry other = (DoubleArrayEntry)obj;
-			if (!Arrays.equals(key, other.key)) {
+			
+			keyset.sort(false);
+			
+			Path run = Files.createTempFile(dir, "dartsclone-", ".run");
+			runs.add(run);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), CHUNK_SIZE))) {
+				byte[] bytes = keyset.bytes();
+				for (int i = 0; i < keyset.size(); i++) {
+					out.writeInt(keyset.length(i));
+					out.write(bytes, keyset.offset(i), keyset.length(i));
+					out.writeInt(keyset.value(i));
+				}
+			}
+			keyset.clear();
+		}
+	}
+	
+	private static class RunReader implements Comparable<RunReader>, Closeable {
+		private final DataInputStream in;
+		private final int index;
+		
+		byte[] key = new byte[256];
+		int length;
+		int value;
+		
+		public RunReader(Path run, int index) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), CHUNK_SIZE));
+			this.index = index;
+		}
+		
+		public boolean next() throws IOException {
+			try {
+				length = in.readInt();
+			} catch (EOFException e) {
 				return false;
 			}
+			if (key.length < length) {
+				key = new byte[Math.max(length, key.length * 2)];
+			}
+			in.readFully(key, 0, length);
+			value = in.readInt();
 			return true;
 		}
+		
+		@Override
+		public int compareTo(RunReader o) {
+			int min = Math.min(length, o.length);
+			for (int i = 0; i < min; i++) {
+				int result = (key[i] & 0xFF) - (o.key[i] & 0xFF);
+				if (result != 0) {
+					return result;
+				}
+			}
+			if (length != o.length) {
+				return length - o.length;
+			}
+			// Earlier runs hold earlier puts, so the first duplicate wins as in Builder.
+			return index - o.index;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
 	}
-
+	
 	public static DoubleArrayTrie load(InputStream in) throws IOException {
-		IntList list = new IntList();
-
-		int value = 0;
-		int pos = 0;
+		return load(Channels.newChannel(in), in.available());
+	}
+	
+	public static DoubleArrayTrie load(ReadableByteChannel channel) throws IOException {
+		return load(channel, 0);
+	}
+	
+	private static DoubleArrayTrie load(ReadableByteChannel channel, long sizeHint) throws IOException {
+		return wrap(readUnits(channel, sizeHint));
+	}
+	
+	static int[] readUnits(ReadableByteChannel channel, long sizeHint) throws IOException {
+		long size = sizeHint;
+		if (channel instanceof SeekableByteChannel) {
+			SeekableByteChannel sc = (SeekableByteChannel)channel;
+			size = sc.size() - sc.position();
+		}
+		if (size / 4 > Integer.MAX_VALUE - 8) {
+			throw new IOException("failed to load: too large size");
+		}
+		int[] array = new int[Math.max((int)(size / 4), CHUNK_SIZE / 4)];
 		
-		int buf;
-		while ((buf = in.read()) != -1) {
-			value |= ((buf & 0xFF) << pos * 8);
-			
-			pos++;
-			if (pos > 3) {
-				list.add(value);
-				value = 0;
-				pos = 0;
+		ByteBuffer buf = ByteBuffer.allocateDirect(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		int length = 0;
+		while (channel.read(buf) != -1) {
+			buf.flip();
+			int n = buf.remaining() / 4;
+			if (length + n > array.length) {
+				int newSize = Math.max(length + n, array.length + (array.length >> 1));
+				array = Arrays.copyOf(array, newSize);
 			}
+			buf.asIntBuffer().get(array, length, n);
+			length += n;
+			buf.position(n * 4);
+			buf.compact();
 		}
 		
-		return new DoubleArrayTrie(list.toArray());
+		if (length != array.length) {
+			array = Arrays.copyOf(array, length);
+		}
+		return array;
 	}
 	
-	private static final ThreadLocal<byte[]> THREAD_LOCAL = 
-			new ThreadLocal<byte[]>() {
-		protected byte[] initialValue() {
-			return new byte[256];
-		};
-	};
+	public static DoubleArrayTrie load(ByteBuffer src) {
+		ByteBuffer buf = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int[] array = new int[buf.remaining() / 4];
+		buf.asIntBuffer().get(array);
+		src.position(src.position() + array.length * 4);
+		return wrap(array);
+	}
 	
-	private int[] array;
+	public static DoubleArrayTrie open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return map(channel);
+		}
+	}
 	
-	private DoubleArrayTrie(int[] array) {
-		this.array = array;
+	public static DoubleArrayTrie map(FileChannel channel) throws IOException {
+		return new DoubleArrayTrie(mapUnits(channel));
 	}
 	
-	public int get(String key) {
-		byte[] buf = THREAD_LOCAL.get();
-		if (buf.length < key.length() * 3) {
-			buf = new byte[key.length() * 3];
-			THREAD_LOCAL.set(buf);
+	static IntBuffer mapUnits(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("failed to map file: too large size");
 		}
-		int length = escapeKey(key, buf);
 		
-		int unit = array[0];
-		int pos = offset(unit);
+		// The mapping stays valid after the channel is closed.
+		return channel.map(MapMode.READ_ONLY, 0, size)
+				.order(ByteOrder.LITTLE_ENDIAN)
+				.asIntBuffer();
+	}
+	
+	static DoubleArrayTrie wrap(IntBuffer array) {
+		return new DoubleArrayTrie(array);
+	}
+	
+	private static final int BATCH_LANES = 8;
+	private static final int LOOKUP_BATCH = 1024;
+	static final int ESCAPED_NUL = 0xC0 | (0x80 << 8);
+	
+	private final IntBuffer array;
+	// The backing array of heap units, or null when the units are mapped or sliced from a buffer.
+	private final int[] heap;
+	
+	private DoubleArrayTrie(IntBuffer array) {
+		this.array = array;
+		this.heap = (array.hasArray() && array.arrayOffset() == 0 && array.limit() == array.array().length)
+				? array.array() : null;
+	}
+	
+	public int get(String key) {
+		return get(key, 0, key.length());
+	}
+	
+	public int get(CharSequence key, int start, int end) {
+		checkRange(key.length(), start, end);
 		
-		for (int i = 0; i < length; i++) {
-			int c = (buf[i] & 0xFF);
+		int id = 0;
+		for (int i = start; i < end; ) {
+			int cp = codePointAt(key, i, end);
+			i += Character.charCount(cp);
 			
-			pos ^= c;
-			unit = array[pos];
-			if (label(unit) == c) {
-				pos ^= offset(unit);
-			} else {
+			id = transitCodePoint(id, cp);
+			if (id < 0) {
 				return -1;
 			}
 		}
-
-		if (hasLeaf(unit)) {
-			return value(array[pos]);
-		} else {
-			return -1;		
+		return leafValue(id);
+	}
+	
+	public int get(byte[] key, int off, int len) {
+		checkRange(key, off, len);
+		
+		int id = 0;
+		for (int i = off; i < off + len; i++) {
+			id = transitByte(id, key[i] & 0xFF);
+			if (id < 0) {
+				return -1;
+			}
 		}
+		return leafValue(id);
 	}
 	
-	public IntStream findByCommonPrefix(String key) {
-		byte[] buf = THREAD_LOCAL.get();
-		if (buf.length < key.length() * 3) {
-			buf = new byte[key.length() * 3];
-			THREAD_LOCAL.set(buf);
+	public int get(ByteBuffer key) {
+		int id = 0;
+		for (int i = key.position(); i < key.limit(); i++) {
+			id = transitByte(id, key.get(i) & 0xFF);
+			if (id < 0) {
+				return -1;
+			}
+		}
+		return leafValue(id);
+	}
+	
+	// Walks the key the same way as get. The low 32 bits of the result are the value, or -2 when the
+	// path dies, and the high 32 bits are the number of key units consumed before the walk ended.
+	long lookup(CharSequence key, int start, int end) {
+		checkRange(key.length(), start, end);
+		
+		int id = 0;
+		for (int i = start; i < end; ) {
+			int cp = codePointAt(key, i, end);
+			id = transitCodePoint(id, cp);
+			if (id < 0) {
+				return lookupResult(i - start, -2);
+			}
+			i += Character.charCount(cp);
+		}
+		return lookupResult(end - start, leafValue(id));
+	}
+	
+	long lookup(byte[] key, int off, int len) {
+		checkRange(key, off, len);
+		
+		int id = 0;
+		for (int i = off; i < off + len; i++) {
+			id = transitByte(id, key[i] & 0xFF);
+			if (id < 0) {
+				return lookupResult(i - off, -2);
+			}
+		}
+		return lookupResult(len, leafValue(id));
+	}
+	
+	private static long lookupResult(int depth, int value) {
+		return ((long)depth << 32) | (value & 0xFFFFFFFFL);
+	}
+	
+	public void getAll(CharSequence[] keys, int[] out) {
+		if (out.length < keys.length) {
+			throw new IndexOutOfBoundsException("keys: " + keys.length + ", out: " + out.length);
+		}
+		getAll(keys, keys.length, out, 0);
+	}
+	
+	private void getAll(CharSequence[] keys, int count, int[] out, int outOff) {
+		// Several lookups advance one step at a time in turn, so their cache misses overlap.
+		int[] index = new int[BATCH_LANES];
+		int[] ids = new int[BATCH_LANES];
+		int[] pos = new int[BATCH_LANES];
+		int next = 0;
+		int active = 0;
+		while (active < BATCH_LANES && next < count) {
+			index[active++] = next++;
+		}
+		while (active > 0) {
+			for (int lane = 0; lane < active; lane++) {
+				CharSequence key = keys[index[lane]];
+				int id = ids[lane];
+				int i = pos[lane];
+				int end = key.length();
+				if (id >= 0 && i < end) {
+					int cp = codePointAt(key, i, end);
+					pos[lane] = i + Character.charCount(cp);
+					ids[lane] = transitCodePoint(id, cp);
+					continue;
+				}
+				
+				out[outOff + index[lane]] = (id >= 0) ? leafValue(id) : -1;
+				if (next < count) {
+					index[lane] = next++;
+					ids[lane] = 0;
+					pos[lane] = 0;
+				} else {
+					active--;
+					index[lane] = index[active];
+					ids[lane] = ids[active];
+					pos[lane] = pos[active];
+				}
+			}
+		}
+	}
+	
+	public void getAll(byte[] keys, int[] offsets, int[] out) {
+		if (offsets.length == 0 || out.length < offsets.length - 1) {
+			throw new IndexOutOfBoundsException("offsets: " + offsets.length + ", out: " + out.length);
+		}
+		int count = offsets.length - 1;
+		checkRange(keys, offsets[0], offsets[count] - offsets[0]);
+		
+		int[] index = new int[BATCH_LANES];
+		int[] ids = new int[BATCH_LANES];
+		int[] pos = new int[BATCH_LANES];
+		int next = 0;
+		int active = 0;
+		while (active < BATCH_LANES && next < count) {
+			pos[active] = offsets[next];
+			index[active++] = next++;
+		}
+		while (active > 0) {
+			for (int lane = 0; lane < active; lane++) {
+				int id = ids[lane];
+				int i = pos[lane];
+				if (id >= 0 && i < offsets[index[lane] + 1]) {
+					pos[lane] = i + 1;
+					ids[lane] = transitByte(id, keys[i] & 0xFF);
+					continue;
+				}
+				
+				out[index[lane]] = (id >= 0) ? leafValue(id) : -1;
+				if (next < count) {
+					pos[lane] = offsets[next];
+					index[lane] = next++;
+					ids[lane] = 0;
+				} else {
+					active--;
+					index[lane] = index[active];
+					ids[lane] = ids[active];
+					pos[lane] = pos[active];
+				}
+			}
+		}
+	}
+	
+	public IntStream lookupAll(Stream<? extends CharSequence> keys) {
+		return StreamSupport.intStream(new LookupSpliterator(keys.spliterator()), keys.isParallel())
+				.onClose(keys::close);
+	}
+	
+	public void lookupAll(List<? extends CharSequence> keys, int[] out) {
+		if (out.length < keys.size()) {
+			throw new IndexOutOfBoundsException("keys: " + keys.size() + ", out: " + out.length);
+		}
+		List<? extends CharSequence> list = (keys instanceof RandomAccess) ? keys : new ArrayList<>(keys);
+		int chunk = Math.max(LOOKUP_BATCH, list.size() / (ForkJoinPool.getCommonPoolParallelism() * 4) + 1);
+		IntStream.range(0, (list.size() + chunk - 1) / chunk).parallel().forEach(i -> {
+			// Each chunk owns its scratch array, so workers share nothing but the read-only units.
+			CharSequence[] scratch = new CharSequence[LOOKUP_BATCH];
+			int end = Math.min(list.size(), (i + 1) * chunk);
+			for (int start = i * chunk; start < end; start += LOOKUP_BATCH) {
+				int count = Math.min(LOOKUP_BATCH, end - start);
+				for (int j = 0; j < count; j++) {
+					scratch[j] = list.get(start + j);
+				}
+				getAll(scratch, count, out, start);
+			}
+		});
+	}
+	
+	private class LookupSpliterator implements Spliterator.OfInt {
+		private final Spliterator<? extends CharSequence> source;
+		private final CharSequence[] keys = new CharSequence[LOOKUP_BATCH];
+		private final int[] values = new int[LOOKUP_BATCH];
+		private int pos;
+		private int limit;
+		
+		public LookupSpliterator(Spliterator<? extends CharSequence> source) {
+			this.source = source;
+		}
+		
+		private boolean fill() {
+			pos = 0;
+			limit = 0;
+			while (limit < LOOKUP_BATCH) {
+				if (!source.tryAdvance(key -> keys[limit++] = key)) {
+					break;
+				}
+			}
+			if (limit == 0) {
+				return false;
+			}
+			getAll(keys, limit, values, 0);
+			Arrays.fill(keys, 0, limit, null);
+			return true;
+		}
+		
+		@Override
+		public boolean tryAdvance(IntConsumer action) {
+			if (pos == limit && !fill()) {
+				return false;
+			}
+			action.accept(values[pos++]);
+			return true;
+		}
+		
+		@Override
+		public void forEachRemaining(IntConsumer action) {
+			while (pos < limit || fill()) {
+				while (pos < limit) {
+					action.accept(values[pos++]);
+				}
+			}
 		}
-		int length = escapeKey(key, buf);
 		
+		@Override
+		public Spliterator.OfInt trySplit() {
+			if (pos < limit) {
+				return null;
+			}
+			Spliterator<? extends CharSequence> prefix = source.trySplit();
+			return (prefix != null) ? new LookupSpliterator(prefix) : null;
+		}
+		
+		@Override
+		public long estimateSize() {
+			long size = source.estimateSize();
+			return (size == Long.MAX_VALUE) ? size : size + (limit - pos);
+		}
+		
+		@Override
+		public int characteristics() {
+			return source.characteristics() & (ORDERED | SIZED | SUBSIZED);
+		}
+	}
+	
+	public IntStream findByCommonPrefix(String key) {
+		return findByCommonPrefix(key, 0, key.length());
+	}
+	
+	public IntStream findByCommonPrefix(CharSequence key, int start, int end) {
 		IntStream.Builder builder = IntStream.builder();
+		commonPrefixSearch(key, start, end, (value, length) -> builder.accept(value));
+		return builder.build();
+	}
+	
+	public IntStream findByCommonPrefix(byte[] key, int off, int len) {
+		IntStream.Builder builder = IntStream.builder();
+		commonPrefixSearch(key, off, len, (value, length) -> builder.accept(value));
+		return builder.build();
+	}
+	
+	public IntStream findByCommonPrefix(ByteBuffer key) {
+		IntStream.Builder builder = IntStream.builder();
+		commonPrefixSearch(key, (value, length) -> builder.accept(value));
+		return builder.build();
+	}
+	
+	public int commonPrefixSearch(String key, int[] values, int[] lengths, int maxResults) {
+		return commonPrefixSearch(key, 0, key.length(), values, lengths, maxResults);
+	}
+	
+	public int commonPrefixSearch(CharSequence key, int start, int end, int[] values, int[] lengths, int maxResults) {
+		checkRange(key.length(), start, end);
 		
-		int unit = array[0];
-		int pos = offset(unit);
+		int numResults = 0;
+		int id = 0;
+		for (int i = start; i < end; ) {
+			int cp = codePointAt(key, i, end);
+			i += Character.charCount(cp);
+			
+			id = transitCodePoint(id, cp);
+			if (id < 0) {
+				break;
+			}
+			
+			int value = leafValue(id);
+			if (value >= 0) {
+				if (numResults < maxResults) {
+					values[numResults] = value;
+					if (lengths != null) {
+						lengths[numResults] = i - start;
+					}
+				}
+				numResults++;
+			}
+		}
+		return numResults;
+	}
+	
+	public int commonPrefixSearch(byte[] key, int off, int len, int[] values, int[] lengths, int maxResults) {
+		checkRange(key, off, len);
 		
-		for (int i = 0; i < length; i++) {
-			int c = (buf[i] & 0xFF);
+		int numResults = 0;
+		int id = 0;
+		for (int i = off; i < off + len; i++) {
+			id = transitByte(id, key[i] & 0xFF);
+			if (id < 0) {
+				break;
+			}
+			
+			int value = leafValue(id);
+			if (value >= 0) {
+				if (numResults < maxResults) {
+					values[numResults] = value;
+					if (lengths != null) {
+						lengths[numResults] = i + 1 - off;
+					}
+				}
+				numResults++;
+			}
+		}
+		return numResults;
+	}
+	
+	public int commonPrefixSearch(ByteBuffer key, int[] values, int[] lengths, int maxResults) {
+		int numResults = 0;
+		int id = 0;
+		for (int i = key.position(); i < key.limit(); i++) {
+			id = transitByte(id, key.get(i) & 0xFF);
+			if (id < 0) {
+				break;
+			}
+			
+			int value = leafValue(id);
+			if (value >= 0) {
+				if (numResults < maxResults) {
+					values[numResults] = value;
+					if (lengths != null) {
+						lengths[numResults] = i + 1 - key.position();
+					}
+				}
+				numResults++;
+			}
+		}
+		return numResults;
+	}
+	
+	public void commonPrefixSearch(String key, CommonPrefixHandler handler) {
+		commonPrefixSearch(key, 0, key.length(), handler);
+	}
+	
+	public void commonPrefixSearch(CharSequence key, int start, int end, CommonPrefixHandler handler) {
+		checkRange(key.length(), start, end);
 		
-			pos ^= c;
-			unit = array[pos];
-			if (label(unit) == c) {
-				pos ^= offset(unit);
-			} else {
+		int id = 0;
+		for (int i = start; i < end; ) {
+			int cp = codePointAt(key, i, end);
+			i += Character.charCount(cp);
+			
+			id = transitCodePoint(id, cp);
+			if (id < 0) {
+				break;
+			}
+			
+			int value = leafValue(id);
+			if (value >= 0) {
+				handler.handle(value, i - start);
+			}
+		}
+	}
+	
+	public void commonPrefixSearch(byte[] key, int off, int len, CommonPrefixHandler handler) {
+		checkRange(key, off, len);
+		
+		int id = 0;
+		for (int i = off; i < off + len; i++) {
+			id = transitByte(id, key[i] & 0xFF);
+			if (id < 0) {
+				break;
+			}
+			
+			int value = leafValue(id);
+			if (value >= 0) {
+				handler.handle(value, i + 1 - off);
+			}
+		}
+	}
+	
+	public void commonPrefixSearch(ByteBuffer key, CommonPrefixHandler handler) {
+		int id = 0;
+		for (int i = key.position(); i < key.limit(); i++) {
+			id = transitByte(id, key.get(i) & 0xFF);
+			if (id < 0) {
 				break;
 			}
 			
-			if (hasLeaf(unit)) {
-				builder.accept(value(array[pos]));
+			int value = leafValue(id);
+			if (value >= 0) {
+				handler.handle(value, i + 1 - key.position());
 			}
 		}
+	}
+	
+	public void buildLattice(CharSequence text, LatticeSink sink) {
+		buildLattice(text, 0, text.length(), sink);
+	}
+	
+	public void buildLattice(CharSequence text, int start, int end, LatticeSink sink) {
+		checkRange(text.length(), start, end);
 		
+		for (int begin = start; begin < end; ) {
+			int id = 0;
+			int i = begin;
+			while (i < end) {
+				int cp = codePointAt(text, i, end);
+				i += Character.charCount(cp);
+				
+				id = transitCodePoint(id, cp);
+				if (id < 0) {
+					break;
+				}
+				
+				int value = leafValue(id);
+				if (value >= 0) {
+					sink.add(begin, i, value);
+				}
+			}
+			begin += Character.charCount(codePointAt(text, begin, end));
+		}
+	}
+	
+	public int traverse(CharSequence key, int[] nodePos, int[] keyPos, int end) {
+		checkRange(key.length(), keyPos[0], end);
+		
+		int id = nodePos[0];
+		while (keyPos[0] < end) {
+			// A high surrogate at the end may be completed by the next call, so it is left in place
+			// and the value of the node reached so far is returned.
+			if (keyPos[0] + 1 == end && Character.isHighSurrogate(key.charAt(keyPos[0]))) {
+				break;
+			}
+			int cp = codePointAt(key, keyPos[0], end);
+			
+			id = transitCodePoint(id, cp);
+			if (id < 0) {
+				return -2;
+			}
+			nodePos[0] = id;
+			keyPos[0] += Character.charCount(cp);
+		}
+		return leafValue(id);
+	}
+	
+	public int traverse(byte[] key, int[] nodePos, int[] keyPos, int length) {
+		checkRange(key, keyPos[0], length - keyPos[0]);
+		
+		int id = nodePos[0];
+		while (keyPos[0] < length) {
+			id = transitByte(id, key[keyPos[0]] & 0xFF);
+			if (id < 0) {
+				return -2;
+			}
+			nodePos[0] = id;
+			keyPos[0]++;
+		}
+		return leafValue(id);
+	}
+	
+	public IntStream predictiveSearch(String prefix) {
+		IntStream.Builder builder = IntStream.builder();
+		predictiveSearch(prefix, (key, length, value) -> {
+			builder.accept(value);
+			return true;
+		});
 		return builder.build();
 	}
 	
+	public int predictiveSearch(String prefix, int[] values, int maxResults) {
+		return predictiveSearch(prefix, 0, prefix.length(), values, maxResults);
+	}
+	
+	public int predictiveSearch(CharSequence prefix, int start, int end, int[] values, int maxResults) {
+		checkRange(prefix.length(), start, end);
+		
+		if (maxResults <= 0) {
+			return 0;
+		}
+		PredictiveCursor cursor = new PredictiveCursor((end - start) * 3);
+		return predict(cursor, escapeKey(prefix, start, end, cursor.key), null, values, maxResults);
+	}
+	
+	public int predictiveSearch(byte[] prefix, int off, int len, int[] values, int maxResults) {
+		checkRange(prefix, off, len);
+		
+		if (maxResults <= 0) {
+			return 0;
+		}
+		PredictiveCursor cursor = new PredictiveCursor(len * 2);
+		return predict(cursor, escapeKey(prefix, off, len, cursor.key), null, values, maxResults);
+	}
+	
+	public void predictiveSearch(String prefix, PredictiveHandler handler) {
+		predictiveSearch(prefix, 0, prefix.length(), handler);
+	}
+	
+	public void predictiveSearch(CharSequence prefix, int start, int end, PredictiveHandler handler) {
+		predictiveSearch(prefix, start, end, new PredictiveCursor((end - start) * 3), handler);
+	}
+	
+	public void predictiveSearch(CharSequence prefix, int start, int end, PredictiveCursor cursor, PredictiveHandler handler) {
+		checkRange(prefix.length(), start, end);
+		
+		cursor.ensureCapacity((end - start) * 3);
+		predict(cursor, escapeKey(prefix, start, end, cursor.key), handler, null, 0);
+	}
+	
+	public void predictiveSearch(byte[] prefix, int off, int len, PredictiveHandler handler) {
+		predictiveSearch(prefix, off, len, new PredictiveCursor(len * 2), handler);
+	}
+	
+	public void predictiveSearch(byte[] prefix, int off, int len, PredictiveCursor cursor, PredictiveHandler handler) {
+		checkRange(prefix, off, len);
+		
+		cursor.ensureCapacity(len * 2);
+		predict(cursor, escapeKey(prefix, off, len, cursor.key), handler, null, 0);
+	}
+	
+	// Reports each key to the handler, or stores up to maxResults values when there is no handler.
+	private int predict(PredictiveCursor cursor, int length, PredictiveHandler handler, int[] values, int maxResults) {
+		int id = 0;
+		for (int i = 0; i < length; i++) {
+			id = transit(id, cursor.key[i] & 0xFF);
+			if (id < 0) {
+				return 0;
+			}
+		}
+		
+		// ids[depth] holds the parent of the node whose label is key[depth].
+		int numResults = 0;
+		int depth = length;
+		int label = 0;
+		while (true) {
+			if (label == 0) {
+				int value = leafValue(id);
+				if (value >= 0) {
+					if (handler != null) {
+						if (!handler.handle(cursor.key, depth, value)) {
+							return numResults;
+						}
+					} else {
+						values[numResults] = value;
+						if (numResults + 1 >= maxResults) {
+							return numResults + 1;
+						}
+					}
+					numResults++;
+				}
+			}
+			
+			int offset = id ^ offset(unit(id));
+			int child = -1;
+			for (label++; label <= 0xFF; label++) {
+				if (label(unit(offset ^ label)) == label) {
+					child = offset ^ label;
+					break;
+				}
+			}
+			
+			if (child >= 0) {
+				cursor.ensureCapacity(depth + 1);
+				cursor.key[depth] = (byte)label;
+				cursor.ids[depth] = id;
+				depth++;
+				id = child;
+				label = 0;
+			} else if (depth > length) {
+				depth--;
+				id = cursor.ids[depth];
+				label = cursor.key[depth] & 0xFF;
+			} else {
+				return numResults;
+			}
+		}
+	}
+	
 	public void writeTo(OutputStream out) throws IOException {
-		byte[] buf = new byte[4];
-		for (int i = 0; i < array.length; i++) {
-			int value = array[i];
-			buf[0] = (byte)(value & 0xFF);
-			buf[1] = (byte)((value >> 8) & 0xFF);
-			buf[2] = (byte)((value >> 16) & 0xFF);
-			buf[3] = (byte)((value >> 24) & 0xFF);
-			out.write(buf);
+		writeTo(Channels.newChannel(out));
+	}
+	
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocateDirect(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		IntBuffer units = buf.asIntBuffer();
+		IntBuffer src = array.duplicate();
+		
+		for (int i = 0; i < array.limit(); i += units.capacity()) {
+			src.limit(Math.min(i + units.capacity(), array.limit()));
+			src.position(i);
+			
+			units.clear();
+			units.put(src);
+			
+			buf.clear();
+			buf.limit(units.position() * 4);
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
 		}
 	}
 
@@ -223,7 +1147,7 @@ public class DoubleArrayTrie {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + Arrays.hashCode(array);
+		result = prime * result + array.hashCode();
 		return result;
 	}
 
@@ -239,7 +1163,7 @@ public class DoubleArrayTrie {
 			return false;
 		}
 		DoubleArrayTrie other = (DoubleArrayTrie) obj;
-		if (!Arrays.equals(array, other.array)) {
+		if (!array.equals(other.array)) {
 			return false;
 		}
 		return true;
@@ -247,28 +1171,190 @@ public class DoubleArrayTrie {
 	
 	@Override
 	public String toString() {
-		return IntList.wrap(array).toHexString();
+		int[] units = new int[array.limit()];
+		array.duplicate().get(units);
+		return IntList.wrap(units).toHexString();
+	}
+	
+	public int size() {
+		return array.limit();
+	}
+	
+	int transit(int id, int label) {
+		int child = id ^ offset(unit(id)) ^ label;
+		if (label(unit(child)) != label) {
+			return -1;
+		}
+		return child;
+	}
+	
+	private int transitByte(int id, int b) {
+		if (b == 0) {
+			id = transit(id, 0xC0);
+			return (id >= 0) ? transit(id, 0x80) : id;
+		}
+		return transit(id, b);
+	}
+	
+	private int transitCodePoint(int id, int cp) {
+		if (cp != '\0' && cp < 0x80) {
+			return transit(id, cp);
+		}
+		
+		if (cp < 0x800) {
+			id = transit(id, ((cp >> 6) & 0x1F) | 0xC0);
+		} else {
+			if (cp < 0x10000) {
+				id = transit(id, ((cp >> 12) & 0x0F) | 0xE0);
+			} else {
+				id = transit(id, (cp >> 18) | 0xF0);
+				if (id >= 0) {
+					id = transit(id, ((cp >> 12) & 0x3F) | 0x80);
+				}
+			}
+			if (id >= 0) {
+				id = transit(id, ((cp >> 6) & 0x3F) | 0x80);
+			}
+		}
+		if (id >= 0) {
+			id = transit(id, (cp & 0x3F) | 0x80);
+		}
+		return id;
+	}
+	
+	// Heap units skip the call and the bounds check of IntBuffer.get, which would sit in every lookup step.
+	private int unit(int id) {
+		int[] heap = this.heap;
+		return (heap != null) ? heap[id] : array.get(id);
+	}
+	
+	int unitAt(int id) {
+		return unit(id);
+	}
+	
+	boolean hasLeafAt(int id) {
+		return hasLeaf(unit(id));
+	}
+	
+	int labelAt(int id) {
+		return label(unit(id));
+	}
+	
+	int leafValue(int id) {
+		int unit = unit(id);
+		if (hasLeaf(unit)) {
+			return value(unit(id ^ offset(unit)));
+		}
+		return -1;
+	}
+	
+	static int codePointAt(CharSequence key, int index, int end) {
+		char c = key.charAt(index);
+		if (Character.isHighSurrogate(c) && index + 1 < end) {
+			char c2 = key.charAt(index + 1);
+			if (Character.isLowSurrogate(c2)) {
+				return Character.toCodePoint(c, c2);
+			}
+		}
+		return c;
+	}
+	
+	static void checkRange(int length, int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+		}
 	}
 	
-	private static boolean hasLeaf(int unit) {
+	static void checkRange(byte[] key, int off, int len) {
+		if (off < 0 || len < 0 || len > key.length - off) {
+			throw new IndexOutOfBoundsException("off: " + off + ", len: " + len + ", length: " + key.length);
+		}
+	}
+	
+	static boolean hasLeaf(int unit) {
 		return ((unit >> 8) & 1) == 1;
 	}
 	
-	private static int value(int unit) {
+	static int value(int unit) {
 		return unit & ((1 << 31) - 1);
 	}
 
-	private static int label(int unit) {
+	static int label(int unit) {
 		return unit & ((1 << 31) | 0xFF);
 	}
 	
-	private static int offset(int unit) {
+	static int offset(int unit) {
 		return (unit >> 10) << ((unit & (1 << 9)) >> 6);
 	}
 	
-	private static int escapeKey(String str, byte[] buf) {
+	static String unescapeKey(byte[] key, int off, int len) {
+		StringBuilder sb = new StringBuilder(len);
+		int end = off + len;
+		for (int i = off; i < end; ) {
+			int b = key[i] & 0xFF;
+			if (b < 0x80) {
+				sb.append((char)b);
+				i++;
+			} else if (b >= 0xC0 && b < 0xE0 && i + 1 < end) {
+				sb.append((char)(((b & 0x1F) << 6) | (key[i + 1] & 0x3F)));
+				i += 2;
+			} else if (b >= 0xE0 && b < 0xF0 && i + 2 < end) {
+				sb.append((char)(((b & 0x0F) << 12) | ((key[i + 1] & 0x3F) << 6) | (key[i + 2] & 0x3F)));
+				i += 3;
+			} else if (b >= 0xF0 && b < 0xF8 && i + 3 < end) {
+				sb.appendCodePoint(((b & 0x07) << 18) | ((key[i + 1] & 0x3F) << 12)
+						| ((key[i + 2] & 0x3F) << 6) | (key[i + 3] & 0x3F));
+				i += 4;
+			} else {
+				sb.append('\uFFFD');
+				i++;
+			}
+		}
+		return sb.toString();
+	}
+	
+	// Packs the escaped UTF-8 bytes of a code point into an int, first byte lowest.
+	static int escapeCodePoint(int cp) {
+		if (cp == '\0') {
+			return ESCAPED_NUL;
+		} else if (cp < 0x80) {
+			return cp;
+		} else if (cp < 0x800) {
+			return ((cp >> 6) | 0xC0)
+					| (((cp & 0x3F) | 0x80) << 8);
+		} else if (cp < 0x10000) {
+			return ((cp >> 12) | 0xE0)
+					| ((((cp >> 6) & 0x3F) | 0x80) << 8)
+					| (((cp & 0x3F) | 0x80) << 16);
+		} else {
+			return ((cp >> 18) | 0xF0)
+					| ((((cp >> 12) & 0x3F) | 0x80) << 8)
+					| ((((cp >> 6) & 0x3F) | 0x80) << 16)
+					| (((cp & 0x3F) | 0x80) << 24);
+		}
+	}
+	
+	static int escapedLength(int cp) {
+		if (cp == '\0') {
+			return 2;
+		} else if (cp < 0x80) {
+			return 1;
+		} else if (cp < 0x800) {
+			return 2;
+		} else if (cp < 0x10000) {
+			return 3;
+		} else {
+			return 4;
+		}
+	}
+	
+	static int escapeKey(String str, byte[] buf) {
+		return escapeKey(str, 0, str.length(), buf);
+	}
+	
+	private static int escapeKey(CharSequence str, int start, int end, byte[] buf) {
 		int pos = 0;
-		for (int i = 0; i < str.length(); i++) {
+		for (int i = start; i < end; i++) {
 			char c = str.charAt(i);
 			if (c != '\0' && c < '\u0080') {
 				buf[pos++] = (byte)c;
@@ -281,7 +1367,7 @@ public class DoubleArrayTrie {
 				continue;
 			}
 			
-			if (Character.isHighSurrogate(c) && i + 1 < str.length()) {
+			if (Character.isHighSurrogate(c) && i + 1 < end) {
 				char c2 = str.charAt(i + 1);
 				if (Character.isLowSurrogate(c2)) {
 					int cp = Character.toCodePoint(c, c2);
@@ -300,4 +1386,17 @@ public class DoubleArrayTrie {
 		}
 		return pos;
 	}
+	
+	private static int escapeKey(byte[] key, int off, int len, byte[] buf) {
+		int pos = 0;
+		for (int i = off; i < off + len; i++) {
+			if (key[i] == 0) {
+				buf[pos++] = (byte)0xC0;
+				buf[pos++] = (byte)0x80;
+			} else {
+				buf[pos++] = key[i];
+			}
+		}
+		return pos;
+	}
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+public class InstrumentedTrie {
+	public static InstrumentedTrie load(InputStream in, LookupListener listener) throws IOException {
+		long start = System.nanoTime();
+		DoubleArrayTrie trie = DoubleArrayTrie.load(in);
+		listener.onLoad(trie.size(), System.nanoTime() - start);
+		return new InstrumentedTrie(trie, listener);
+	}
+	
+	public static InstrumentedTrie load(ReadableByteChannel channel, LookupListener listener) throws IOException {
+		long start = System.nanoTime();
+		DoubleArrayTrie trie = DoubleArrayTrie.load(channel);
+		listener.onLoad(trie.size(), System.nanoTime() - start);
+		return new InstrumentedTrie(trie, listener);
+	}
+	
+	public static InstrumentedTrie open(Path path, LookupListener listener) throws IOException {
+		long start = System.nanoTime();
+		DoubleArrayTrie trie = DoubleArrayTrie.open(path);
+		listener.onLoad(trie.size(), System.nanoTime() - start);
+		return new InstrumentedTrie(trie, listener);
+	}
+	
+	private final DoubleArrayTrie trie;
+	private final LookupListener listener;
+	
+	public InstrumentedTrie(DoubleArrayTrie trie, LookupListener listener) {
+		if (trie == null || listener == null) {
+			throw new NullPointerException();
+		}
+		this.trie = trie;
+		this.listener = listener;
+	}
+	
+	public DoubleArrayTrie trie() {
+		return trie;
+	}
+	
+	public LookupListener listener() {
+		return listener;
+	}
+	
+	public int get(String key) {
+		return get(key, 0, key.length());
+	}
+	
+	public int get(CharSequence key, int start, int end) {
+		return report(trie.lookup(key, start, end));
+	}
+	
+	public int get(byte[] key, int off, int len) {
+		return report(trie.lookup(key, off, len));
+	}
+	
+	private int report(long result) {
+		int value = (int)result;
+		listener.onLookup((int)(result >>> 32), value);
+		return (value >= 0) ? value : -1;
+	}
+	
+	public IntStream findByCommonPrefix(String key) {
+		return findByCommonPrefix(key, 0, key.length());
+	}
+	
+	public IntStream findByCommonPrefix(CharSequence key, int start, int end) {
+		IntStream.Builder builder = IntStream.builder();
+		commonPrefixSearch(key, start, end, (value, length) -> builder.add(value));
+		return builder.build();
+	}
+	
+	public int commonPrefixSearch(String key, int[] values, int[] lengths, int maxResults) {
+		return commonPrefixSearch(key, 0, key.length(), values, lengths, maxResults);
+	}
+	
+	public int commonPrefixSearch(CharSequence key, int start, int end, int[] values, int[] lengths, int maxResults) {
+		int results = trie.commonPrefixSearch(key, start, end, values, lengths, maxResults);
+		listener.onPrefixSearch(end - start, results);
+		return results;
+	}
+	
+	public void commonPrefixSearch(CharSequence key, int start, int end, CommonPrefixHandler handler) {
+		int[] results = { 0 };
+		trie.commonPrefixSearch(key, start, end, (value, length) -> {
+			results[0]++;
+			handler.handle(value, length);
+		});
+		listener.onPrefixSearch(end - start, results[0]);
+	}
+	
+	public int size() {
+		return trie.size();
+	}
+
+	@Override
+	public String toString() {
+		return "InstrumentedTrie [trie=" + trie.size() + " units, listener=" + listener + "]";
+	}
+}
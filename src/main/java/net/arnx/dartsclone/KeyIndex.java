@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import net.arnx.dartsclone.util.IntList;
+
+public class KeyIndex {
+	public static class Builder {
+		private DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+		
+		public Builder put(String key, int value) {
+			builder.put(key, value);
+			return this;
+		}
+		
+		public KeyIndex build() {
+			// A shared subtree has more than one parent, so the trie is built without sharing.
+			IntList parents = new IntList();
+			int[] units = builder.toArray(false, parents);
+			return new KeyIndex(DoubleArrayTrie.wrap(units), IntBuffer.wrap(parents.toArray()));
+		}
+	}
+	
+	public static KeyIndex load(InputStream in) throws IOException {
+		return split(IntBuffer.wrap(DoubleArrayTrie.readUnits(Channels.newChannel(in), in.available())));
+	}
+	
+	public static KeyIndex load(ReadableByteChannel channel) throws IOException {
+		return split(IntBuffer.wrap(DoubleArrayTrie.readUnits(channel, 0)));
+	}
+	
+	public static KeyIndex open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return map(channel);
+		}
+	}
+	
+	public static KeyIndex map(FileChannel channel) throws IOException {
+		return split(DoubleArrayTrie.mapUnits(channel));
+	}
+	
+	private static KeyIndex split(IntBuffer buf) throws IOException {
+		if (buf.limit() % 2 != 0) {
+			throw new IOException("failed to load: broken size");
+		}
+		
+		int size = buf.limit() / 2;
+		IntBuffer units = buf.duplicate();
+		units.limit(size);
+		IntBuffer parents = buf.duplicate();
+		parents.position(size);
+		return new KeyIndex(DoubleArrayTrie.wrap(units.slice()), parents.slice());
+	}
+	
+	private final DoubleArrayTrie trie;
+	private final IntBuffer parents;
+	private final int[] tableValues;
+	private final int[] tableIds;
+	private final int tableShift;
+	
+	private KeyIndex(DoubleArrayTrie trie, IntBuffer parents) {
+		this.trie = trie;
+		this.parents = parents;
+		
+		int numLeaves = 0;
+		for (int id = 1; id < trie.size(); id++) {
+			if (trie.labelAt(id) >= 0 && trie.leafValue(id) >= 0) {
+				numLeaves++;
+			}
+		}
+		
+		int shift = 32 - 1;
+		while ((1 << (32 - shift)) < numLeaves * 2) {
+			shift--;
+		}
+		this.tableShift = shift;
+		this.tableValues = new int[1 << (32 - shift)];
+		this.tableIds = new int[tableValues.length];
+		
+		for (int id = 1; id < trie.size(); id++) {
+			// Value units have the top bit set, and their payload must not be read as a node.
+			if (trie.labelAt(id) < 0) {
+				continue;
+			}
+			int value = trie.leafValue(id);
+			if (value < 0) {
+				continue;
+			}
+			
+			int mask = tableIds.length - 1;
+			for (int i = hash(value); ; i = (i + 1) & mask) {
+				if (tableIds[i] == 0) {
+					tableValues[i] = value;
+					tableIds[i] = id;
+					break;
+				} else if (tableValues[i] == value) {
+					break;
+				}
+			}
+		}
+	}
+	
+	public DoubleArrayTrie trie() {
+		return trie;
+	}
+	
+	public int get(String key) {
+		return trie.get(key);
+	}
+	
+	public int nodeOf(int value) {
+		if (value < 0) {
+			return -1;
+		}
+		
+		int mask = tableIds.length - 1;
+		for (int i = hash(value); tableIds[i] != 0; i = (i + 1) & mask) {
+			if (tableValues[i] == value) {
+				return tableIds[i];
+			}
+		}
+		return -1;
+	}
+	
+	public String keyOf(int value) {
+		int id = nodeOf(value);
+		return (id >= 0) ? keyAt(id) : null;
+	}
+	
+	public String keyAt(int nodeId) {
+		if (nodeId < 0 || nodeId >= trie.size()) {
+			throw new IndexOutOfBoundsException("nodeId: " + nodeId);
+		}
+		
+		byte[] buf = new byte[32];
+		int length = 0;
+		for (int id = nodeId; id != 0; id = parents.get(id)) {
+			if (length == buf.length) {
+				buf = Arrays.copyOf(buf, buf.length * 2);
+			}
+			buf[length++] = (byte)trie.labelAt(id);
+		}
+		
+		for (int i = 0, j = length - 1; i < j; i++, j--) {
+			byte tmp = buf[i];
+			buf[i] = buf[j];
+			buf[j] = tmp;
+		}
+		return DoubleArrayTrie.unescapeKey(buf, 0, length);
+	}
+	
+	public void writeTo(OutputStream out) throws IOException {
+		writeTo(Channels.newChannel(out));
+	}
+	
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		trie.writeTo(channel);
+		DoubleArrayTrie.wrap(parents.duplicate()).writeTo(channel);
+	}
+	
+	private int hash(int value) {
+		return (value * 0x9E3779B9) >>> tableShift;
+	}
+
+	@Override
+	public int hashCode() {
+		return trie.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (getClass() != obj.getClass()) {
+			return false;
+		}
+		KeyIndex other = (KeyIndex) obj;
+		if (!trie.equals(other.trie)) {
+			return false;
+		}
+		if (!parents.equals(other.parents)) {
+			return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public String toString() {
+		return trie.toString();
+	}
+}
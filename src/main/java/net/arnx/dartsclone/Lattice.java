@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.util.Arrays;
+
+public class Lattice implements LatticeSink {
+	private int[] begins;
+	private int[] ends;
+	private int[] values;
+	private int size;
+	
+	public Lattice() {
+		this(64);
+	}
+	
+	public Lattice(int capacity) {
+		begins = new int[capacity];
+		ends = new int[capacity];
+		values = new int[capacity];
+	}
+	
+	@Override
+	public void add(int begin, int end, int value) {
+		if (size == begins.length) {
+			int newSize = Math.max(size + 1, 2);
+			newSize += (newSize >> 1);
+			
+			begins = Arrays.copyOf(begins, newSize);
+			ends = Arrays.copyOf(ends, newSize);
+			values = Arrays.copyOf(values, newSize);
+		}
+		begins[size] = begin;
+		ends[size] = end;
+		values[size] = value;
+		size++;
+	}
+	
+	public int begin(int index) {
+		checkIndex(index);
+		return begins[index];
+	}
+	
+	public int end(int index) {
+		checkIndex(index);
+		return ends[index];
+	}
+	
+	public int value(int index) {
+		checkIndex(index);
+		return values[index];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	// Keeps the arrays so that the next sentence does not allocate.
+	public void clear() {
+		size = 0;
+	}
+	
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new ArrayIndexOutOfBoundsException();
+		}
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(begins[i]).append("-").append(ends[i]).append(":").append(values[i]);
+		}
+		sb.append("]");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+public interface LookupListener {
+	/**
+	 * Called after a lookup. The depth is the number of key units consumed before the lookup ended.
+	 * The value is the result, -1 when the key is a prefix without a value or -2 when the path dies.
+	 */
+	default void onLookup(int depth, int value) {
+	}
+	
+	default void onPrefixSearch(int length, int results) {
+	}
+	
+	default void onLoad(int units, long nanos) {
+	}
+}
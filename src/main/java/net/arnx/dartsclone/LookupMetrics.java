@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class LookupMetrics implements LookupListener {
+	private static final int MAX_DEPTH = 64;
+	
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder deadEnds = new LongAdder();
+	private final LongAdder[] depths = newAdders(MAX_DEPTH);
+	private final LongAdder[] missDepths = newAdders(MAX_DEPTH);
+	
+	private final LongAdder prefixSearches = new LongAdder();
+	private final LongAdder prefixResults = new LongAdder();
+	
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder loadUnits = new LongAdder();
+	private final LongAdder loadNanos = new LongAdder();
+	
+	private static LongAdder[] newAdders(int size) {
+		LongAdder[] adders = new LongAdder[size];
+		for (int i = 0; i < size; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+	
+	@Override
+	public void onLookup(int depth, int value) {
+		lookups.increment();
+		int bucket = Math.min(depth, MAX_DEPTH - 1);
+		depths[bucket].increment();
+		if (value >= 0) {
+			hits.increment();
+		} else {
+			missDepths[bucket].increment();
+			if (value == -2) {
+				deadEnds.increment();
+			}
+		}
+	}
+	
+	@Override
+	public void onPrefixSearch(int length, int results) {
+		prefixSearches.increment();
+		prefixResults.add(results);
+	}
+	
+	@Override
+	public void onLoad(int units, long nanos) {
+		loads.increment();
+		loadUnits.add(units);
+		loadNanos.add(nanos);
+	}
+	
+	public long lookups() {
+		return lookups.sum();
+	}
+	
+	public long hits() {
+		return hits.sum();
+	}
+	
+	public long misses() {
+		return lookups.sum() - hits.sum();
+	}
+	
+	public long deadEnds() {
+		return deadEnds.sum();
+	}
+	
+	public int maxDepth() {
+		return MAX_DEPTH - 1;
+	}
+	
+	public long depthCount(int depth) {
+		return depths[Math.min(depth, MAX_DEPTH - 1)].sum();
+	}
+	
+	public long missDepthCount(int depth) {
+		return missDepths[Math.min(depth, MAX_DEPTH - 1)].sum();
+	}
+	
+	public long prefixSearches() {
+		return prefixSearches.sum();
+	}
+	
+	public long prefixResults() {
+		return prefixResults.sum();
+	}
+	
+	public long loads() {
+		return loads.sum();
+	}
+	
+	public long loadUnits() {
+		return loadUnits.sum();
+	}
+	
+	public long loadNanos() {
+		return loadNanos.sum();
+	}
+	
+	public void reset() {
+		lookups.reset();
+		hits.reset();
+		deadEnds.reset();
+		for (int i = 0; i < MAX_DEPTH; i++) {
+			depths[i].reset();
+			missDepths[i].reset();
+		}
+		prefixSearches.reset();
+		prefixResults.reset();
+		loads.reset();
+		loadUnits.reset();
+		loadNanos.reset();
+	}
+	
+	@Override
+	public String toString() {
+		return "LookupMetrics [lookups=" + lookups() + ", hits=" + hits() + ", misses=" + misses() 
+			+ ", deadEnds=" + deadEnds() + ", prefixSearches=" + prefixSearches() 
+			+ ", prefixResults=" + prefixResults() + ", loads=" + loads() + "]";
+	}
+}
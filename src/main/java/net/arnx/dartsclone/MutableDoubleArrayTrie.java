@@ -0,0 +1,642 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.util.Arrays;
+
+/**
+ * A double-array trie that is updated in place, in the manner of cedar.
+ * <p>
+ * The units have the same layout as those of {@link DoubleArrayTrie} except for the offsets,
+ * which are kept as absolute bases in a separate array while the trie is edited.
+ * Each block of 256 units has a bitmap of its free units and one of its used bases,
+ * so a base for a set of labels is found with a few word operations per block.
+ * This class is not thread-safe.
+ */
+public class MutableDoubleArrayTrie {
+	private static final int BLOCK_SIZE = 256;
+	private static final int BLOCK_WORDS = BLOCK_SIZE / 64;
+	private static final int MAX_SIZE = 1 << 29;
+	// Offsets below this fit in a unit as they are; larger ones must be multiples of 256.
+	private static final int WINDOW_SIZE = 1 << 21;
+	private static final int WINDOW_BLOCKS = WINDOW_SIZE / BLOCK_SIZE;
+	// Free units a window keeps for relocations, which have to stay in the window.
+	private static final int SLACK = WINDOW_SIZE / 32;
+	// Blocks checked for a base whose low byte is fixed, which the ring heuristics do not cover.
+	private static final int MAX_SCAN = 16;
+	// A block that fails this many base searches is only used for nodes with a single child.
+	private static final int MAX_TRIAL = 1;
+	// Marks the root unit, which has no label, so that it is not taken for a free unit.
+	private static final int ROOT = 1 << 9;
+	
+	private static final int FULL = 0;
+	private static final int CLOSED = 1;
+	private static final int OPEN = 2;
+	
+	private int[] units = new int[BLOCK_SIZE];
+	private int[] bases = new int[BLOCK_SIZE];
+	private long[] freeUnits = new long[BLOCK_WORDS];
+	private long[] usedBases = new long[BLOCK_WORDS];
+	private int size;
+	
+	private int[] frees = new int[1];
+	private int[] rejects = new int[1];
+	private int[] trials = new int[1];
+	private int[] states = new int[1];
+	private int[] blockPrevs = new int[1];
+	private int[] blockNexts = new int[1];
+	private final int[] rings = new int[MAX_SIZE / WINDOW_SIZE * 3];
+	private final int[] windowFrees = new int[MAX_SIZE / WINDOW_SIZE];
+	
+	private int keys;
+	private byte[] buf = new byte[256];
+	private int[] path = new int[256];
+	private final int[] labels = new int[BLOCK_SIZE + 1];
+	private final int[] windows = new int[BLOCK_SIZE + 1];
+	private final int[] lows = new int[BLOCK_SIZE + 1];
+	private int constraints;
+	
+	public MutableDoubleArrayTrie() {
+		Arrays.fill(rings, -1);
+		addBlock();
+		occupy(0, ROOT);
+		// Base 0 would put the root unit in the leaf slot of the root.
+		useBase(0);
+		useBase(1);
+		bases[0] = 1;
+	}
+	
+	public MutableDoubleArrayTrie(DoubleArrayTrie trie) {
+		this();
+		trie.predictiveSearch(new byte[0], 0, 0, (key, length, value) -> {
+			insert(key, length, value);
+			return true;
+		});
+	}
+	
+	public int get(String key) {
+		return get(key, 0, key.length());
+	}
+	
+	public int get(CharSequence key, int start, int end) {
+		DoubleArrayTrie.checkRange(key.length(), start, end);
+		
+		int id = 0;
+		for (int i = start; i < end; ) {
+			int cp = DoubleArrayTrie.codePointAt(key, i, end);
+			i += Character.charCount(cp);
+			
+			int bytes = DoubleArrayTrie.escapeCodePoint(cp);
+			for (int n = DoubleArrayTrie.escapedLength(cp); n > 0; n--, bytes >>>= 8) {
+				id = transit(id, bytes & 0xFF);
+				if (id < 0) {
+					return -1;
+				}
+			}
+		}
+		return leafValue(id);
+	}
+	
+	public int get(byte[] key, int off, int len) {
+		DoubleArrayTrie.checkRange(key, off, len);
+		
+		int id = 0;
+		for (int i = off; i < off + len; i++) {
+			int b = key[i] & 0xFF;
+			if (b == 0) {
+				id = transit(id, 0xC0);
+				if (id >= 0) {
+					id = transit(id, 0x80);
+				}
+			} else {
+				id = transit(id, b);
+			}
+			if (id < 0) {
+				return -1;
+			}
+		}
+		return leafValue(id);
+	}
+	
+	/**
+	 * Associates a value with a key.
+	 * 
+	 * @return the previous value of the key, or -1 if the key was not present
+	 */
+	public int put(String key, int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("value must not be negative.");
+		}
+		int length = escape(key);
+		if (length == 0) {
+			throw new IllegalArgumentException("key must not be empty.");
+		}
+		return insert(buf, length, value);
+	}
+	
+	/**
+	 * Removes a key and the nodes that no longer lead to any key.
+	 * 
+	 * @return the removed value, or -1 if the key was not present
+	 */
+	public int remove(String key) {
+		int length = escape(key);
+		if (path.length < length) {
+			path = new int[Math.max(length, path.length * 2)];
+		}
+		
+		int id = 0;
+		for (int i = 0; i < length; i++) {
+			path[i] = id;
+			id = transit(id, buf[i] & 0xFF);
+			if (id < 0) {
+				return -1;
+			}
+		}
+		
+		int unit = units[id];
+		if (!DoubleArrayTrie.hasLeaf(unit)) {
+			return -1;
+		}
+		int value = DoubleArrayTrie.value(units[bases[id]]);
+		release(bases[id]);
+		units[id] = unit & ~(1 << 8);
+		keys--;
+		
+		for (int i = length - 1; i >= 0 && !DoubleArrayTrie.hasLeaf(units[id]) && !hasChildren(id); i--) {
+			freeBase(bases[id]);
+			release(id);
+			id = path[i];
+		}
+		return value;
+	}
+	
+	public int size() {
+		return keys;
+	}
+	
+	public int unitSize() {
+		return size;
+	}
+	
+	/**
+	 * Returns the units in the format of {@link DoubleArrayTrie#wrap(int[])}.
+	 * <p>
+	 * Bases are only placed where their offsets fit in a unit, so the units are copied as they are.
+	 */
+	public int[] toArray() {
+		int[] array = Arrays.copyOf(units, size);
+		for (int id = 0; id < size; id++) {
+			// Node units are positive, value units are negative and free units are zero.
+			if (units[id] > 0) {
+				if (!fits(id, bases[id])) {
+					throw new IllegalStateException("failed to encode an offset: " + (id ^ bases[id]));
+				}
+				array[id] = withOffset(units[id], id ^ bases[id]);
+			}
+		}
+		return array;
+	}
+	
+	public DoubleArrayTrie freeze() {
+		return DoubleArrayTrie.wrap(toArray());
+	}
+	
+	private int insert(byte[] key, int length, int value) {
+		int id = 0;
+		int i = 0;
+		for (; i < length; i++) {
+			int child = transit(id, key[i] & 0xFF);
+			if (child < 0) {
+				break;
+			}
+			id = child;
+		}
+		
+		if (i == length) {
+			int base = bases[id];
+			if (DoubleArrayTrie.hasLeaf(units[id])) {
+				int prev = DoubleArrayTrie.value(units[base]);
+				units[base] = value | (1 << 31);
+				return prev;
+			}
+			if (units[base] != 0) {
+				relocate(id, 0, value | (1 << 31));
+			} else {
+				occupy(base, value | (1 << 31));
+			}
+			units[id] |= 1 << 8;
+			keys++;
+			return -1;
+		}
+		
+		int label = key[i] & 0xFF;
+		int child = bases[id] ^ label;
+		if (units[child] != 0) {
+			child = relocate(id, label, label) ^ label;
+		} else {
+			occupy(child, label);
+		}
+		
+		// The rest of the key is new, so each node below has just one child until the leaf.
+		for (i++; i <= length; i++) {
+			labels[0] = (i < length) ? key[i] & 0xFF : 0;
+			constraints = 0;
+			constrain(child, 0);
+			int base = findBase(1);
+			useBase(base);
+			bases[child] = base;
+			if (i < length) {
+				child = base ^ labels[0];
+				occupy(child, labels[0]);
+			} else {
+				units[child] |= 1 << 8;
+				occupy(base, value | (1 << 31));
+			}
+		}
+		keys++;
+		return -1;
+	}
+	
+	// Moves the children of a node to a base that also has room for the new label, if it is not negative,
+	// and puts the given unit there.
+	private int relocate(int id, int label, int unit) {
+		int base = bases[id];
+		int n = 0;
+		if (label >= 0) {
+			labels[n++] = label;
+		}
+		int moved = n;
+		if (DoubleArrayTrie.hasLeaf(units[id])) {
+			labels[n++] = 0;
+		}
+		constraints = 0;
+		constrain(id, 0);
+		for (int child = nextChild(id, 0); child >= 0; child = nextChild(id, child ^ base)) {
+			labels[n] = child ^ base;
+			// The child keeps its base, so its offset must still fit after the move.
+			constrain(bases[child], labels[n]);
+			n++;
+		}
+		
+		int to = findBase(n);
+		for (int i = moved; i < n; i++) {
+			int from = base ^ labels[i];
+			occupy(to ^ labels[i], units[from]);
+			bases[to ^ labels[i]] = bases[from];
+			release(from);
+		}
+		freeBase(base);
+		useBase(to);
+		bases[id] = to;
+		if (label >= 0) {
+			occupy(to ^ label, unit);
+		}
+		
+		// If no base suited every child, the children whose offsets no longer fit are moved in turn.
+		// The new child has no base yet and is left to the caller.
+		for (int child = nextChild(id, 0); child >= 0; child = nextChild(id, child ^ to)) {
+			if ((child ^ to) != label && !fits(child, bases[child])) {
+				relocate(child, -1, 0);
+			}
+		}
+		return to;
+	}
+	
+	// Requires the unit at (base ^ label) to be able to reach the given base of its own.
+	private void constrain(int base, int label) {
+		windows[constraints] = base / WINDOW_SIZE;
+		lows[constraints] = (base ^ label) & 0xFF;
+		constraints++;
+	}
+	
+	// Tries the window of each constraint and then the last window, in which new blocks are added.
+	// If the children are too far apart for one base, only the node itself is satisfied.
+	private int findBase(int n) {
+		int base = findBaseInWindows(n);
+		if (base < 0 && constraints > 1) {
+			constraints = 1;
+			base = findBaseInWindows(n);
+		}
+		if (base < 0) {
+			int block = addBlock();
+			int low = lowOf(block / WINDOW_BLOCKS);
+			if (low == -2) {
+				constraints = 1;
+				low = lowOf(block / WINDOW_BLOCKS);
+			}
+			base = findBase(block, n, low);
+		}
+		return base;
+	}
+	
+	private int findBaseInWindows(int n) {
+		int last = (size - 1) / WINDOW_SIZE;
+		for (int k = 0; k <= constraints; k++) {
+			int window = (k < constraints) ? windows[k] : last;
+			if (indexOfWindow(window) < k) {
+				continue;
+			}
+			int low = lowOf(window);
+			if (low != -2) {
+				int base = findBaseInWindow(window, n, low);
+				if (base >= 0) {
+					return base;
+				}
+			}
+		}
+		return -1;
+	}
+	
+	private int indexOfWindow(int window) {
+		int k = 0;
+		while (k < constraints && windows[k] != window) {
+			k++;
+		}
+		return k;
+	}
+	
+	// Returns the low byte a base in the window must have, -1 if any will do and -2 if none will.
+	private int lowOf(int window) {
+		int low = -1;
+		for (int k = 0; k < constraints; k++) {
+			if (windows[k] != window) {
+				if (low >= 0 && low != lows[k]) {
+					return -2;
+				}
+				low = lows[k];
+			}
+		}
+		return low;
+	}
+	
+	private int findBaseInWindow(int window, int n, int low) {
+		// A new node can go anywhere, so it leaves the last free units of a window to relocations, which cannot.
+		if (n == 1 && low < 0 && windowFrees[window] < SLACK && (window + 1) * WINDOW_SIZE <= size) {
+			return -1;
+		}
+		
+		int ring = window * 3;
+		if (n == 1 && rings[ring + CLOSED] >= 0) {
+			int block = rings[ring + CLOSED];
+			rings[ring + CLOSED] = blockNexts[block];
+			int base = findBase(block, n, low);
+			if (base >= 0) {
+				return base;
+			}
+		}
+		
+		if (rings[ring + OPEN] >= 0) {
+			int last = blockPrevs[rings[ring + OPEN]];
+			for (int block = rings[ring + OPEN], scans = 0; ; scans++) {
+				int next = blockNexts[block];
+				if (low >= 0) {
+					if (scans == MAX_SCAN) {
+						break;
+					}
+					int base = findBase(block, n, low);
+					if (base >= 0) {
+						return base;
+					}
+				} else {
+					if (frees[block] >= n && n < rejects[block]) {
+						int base = findBase(block, n, low);
+						if (base >= 0) {
+							return base;
+						}
+					}
+					rejects[block] = Math.min(rejects[block], n);
+					trials[block]++;
+					updateState(block);
+				}
+				if (block == last) {
+					break;
+				}
+				block = next;
+			}
+		}
+		return -1;
+	}
+	
+	// A base b fits when it is not used and every unit b ^ label is free. Within a block, b ^ label
+	// is word b / 64 ^ label / 64 and bit b % 64 ^ label % 64, so each free word is permuted once per label.
+	private int findBase(int block, int n, int low) {
+		int word = block * BLOCK_WORDS;
+		int first = (low < 0) ? 0 : low >>> 6;
+		int last = (low < 0) ? BLOCK_WORDS - 1 : low >>> 6;
+		for (int w = first; w <= last; w++) {
+			long bits = ~usedBases[word + w] & ((low < 0) ? -1L : 1L << low);
+			for (int i = 0; i < n && bits != 0; i++) {
+				bits &= permute(freeUnits[word + (w ^ (labels[i] >>> 6))], labels[i] & 0x3F);
+			}
+			if (bits != 0) {
+				return block * BLOCK_SIZE + w * 64 + Long.numberOfTrailingZeros(bits);
+			}
+		}
+		return -1;
+	}
+	
+	private int addBlock() {
+		if (size >= MAX_SIZE) {
+			throw new IllegalStateException("failed to add a block: too many units");
+		}
+		if (size == units.length) {
+			int capacity = Math.min(units.length * 2, MAX_SIZE);
+			units = Arrays.copyOf(units, capacity);
+			bases = Arrays.copyOf(bases, capacity);
+			freeUnits = Arrays.copyOf(freeUnits, capacity / 64);
+			usedBases = Arrays.copyOf(usedBases, capacity / 64);
+			
+			int blocks = capacity / BLOCK_SIZE;
+			frees = Arrays.copyOf(frees, blocks);
+			rejects = Arrays.copyOf(rejects, blocks);
+			trials = Arrays.copyOf(trials, blocks);
+			states = Arrays.copyOf(states, blocks);
+			blockPrevs = Arrays.copyOf(blockPrevs, blocks);
+			blockNexts = Arrays.copyOf(blockNexts, blocks);
+		}
+		
+		int block = size / BLOCK_SIZE;
+		Arrays.fill(freeUnits, block * BLOCK_WORDS, (block + 1) * BLOCK_WORDS, -1L);
+		frees[block] = BLOCK_SIZE;
+		rejects[block] = BLOCK_SIZE + 1;
+		trials[block] = 0;
+		states[block] = FULL;
+		windowFrees[block / WINDOW_BLOCKS] += BLOCK_SIZE;
+		size += BLOCK_SIZE;
+		updateState(block);
+		return block;
+	}
+	
+	private void occupy(int e, int unit) {
+		int block = e / BLOCK_SIZE;
+		freeUnits[e >>> 6] &= ~(1L << e);
+		frees[block]--;
+		windowFrees[block / WINDOW_BLOCKS]--;
+		units[e] = unit;
+		updateState(block);
+	}
+	
+	private void release(int e) {
+		int block = e / BLOCK_SIZE;
+		freeUnits[e >>> 6] |= 1L << e;
+		frees[block]++;
+		windowFrees[block / WINDOW_BLOCKS]++;
+		rejects[block] = BLOCK_SIZE + 1;
+		trials[block] = 0;
+		units[e] = 0;
+		updateState(block);
+	}
+	
+	private void useBase(int base) {
+		usedBases[base >>> 6] |= 1L << base;
+	}
+	
+	private void freeBase(int base) {
+		usedBases[base >>> 6] &= ~(1L << base);
+	}
+	
+	private void updateState(int block) {
+		int state;
+		if (frees[block] == 0) {
+			state = FULL;
+		} else if (frees[block] == 1 || trials[block] >= MAX_TRIAL) {
+			state = CLOSED;
+		} else {
+			state = OPEN;
+		}
+		
+		if (state != states[block]) {
+			int ring = block / WINDOW_BLOCKS * 3;
+			if (states[block] != FULL) {
+				rings[ring + states[block]] = unlink(blockPrevs, blockNexts, rings[ring + states[block]], block);
+			}
+			if (state != FULL) {
+				rings[ring + state] = link(blockPrevs, blockNexts, rings[ring + state], block);
+			}
+			states[block] = state;
+		}
+	}
+	
+	private int transit(int id, int label) {
+		int child = bases[id] ^ label;
+		if (DoubleArrayTrie.label(units[child]) != label) {
+			return -1;
+		}
+		return child;
+	}
+	
+	private int leafValue(int id) {
+		if (DoubleArrayTrie.hasLeaf(units[id])) {
+			return DoubleArrayTrie.value(units[bases[id]]);
+		}
+		return -1;
+	}
+	
+	private boolean hasChildren(int id) {
+		return nextChild(id, 0) >= 0;
+	}
+	
+	// Returns the child with the smallest label above the given one. The used units of the block are
+	// permuted by the base, so their bits come in label order and only those units are checked.
+	private int nextChild(int id, int label) {
+		int base = bases[id];
+		int from = label + 1;
+		for (int w = from >>> 6; w < BLOCK_WORDS; w++) {
+			long bits = ~permute(freeUnits[(base >>> 6) ^ w], base & 0x3F);
+			if (w == from >>> 6) {
+				bits &= -1L << from;
+			}
+			for (; bits != 0; bits &= bits - 1) {
+				int l = w * 64 + Long.numberOfTrailingZeros(bits);
+				if (DoubleArrayTrie.label(units[base ^ l]) == l) {
+					return base ^ l;
+				}
+			}
+		}
+		return -1;
+	}
+	
+	private static boolean fits(int id, int base) {
+		int offset = id ^ base;
+		return offset < WINDOW_SIZE || (offset & 0xFF) == 0;
+	}
+	
+	private int escape(String key) {
+		if (buf.length < key.length() * 3) {
+			buf = new byte[key.length() * 3];
+		}
+		return DoubleArrayTrie.escapeKey(key, buf);
+	}
+	
+	private static int withOffset(int unit, int offset) {
+		unit &= (1 << 8) | 0xFF;
+		if (offset < 1 << 21) {
+			return unit | (offset << 10);
+		}
+		return unit | (offset << 2) | (1 << 9);
+	}
+	
+	// Moves bit i of a word to bit i ^ k.
+	private static long permute(long bits, int k) {
+		if ((k & 1) != 0) {
+			bits = ((bits & 0x5555555555555555L) << 1) | ((bits >>> 1) & 0x5555555555555555L);
+		}
+		if ((k & 2) != 0) {
+			bits = ((bits & 0x3333333333333333L) << 2) | ((bits >>> 2) & 0x3333333333333333L);
+		}
+		if ((k & 4) != 0) {
+			bits = ((bits & 0x0F0F0F0F0F0F0F0FL) << 4) | ((bits >>> 4) & 0x0F0F0F0F0F0F0F0FL);
+		}
+		if ((k & 8) != 0) {
+			bits = ((bits & 0x00FF00FF00FF00FFL) << 8) | ((bits >>> 8) & 0x00FF00FF00FF00FFL);
+		}
+		if ((k & 16) != 0) {
+			bits = ((bits & 0x0000FFFF0000FFFFL) << 16) | ((bits >>> 16) & 0x0000FFFF0000FFFFL);
+		}
+		if ((k & 32) != 0) {
+			bits = (bits << 32) | (bits >>> 32);
+		}
+		return bits;
+	}
+	
+	// Appends an entry to a ring and returns the new head.
+	private static int link(int[] prevs, int[] nexts, int head, int e) {
+		if (head < 0) {
+			prevs[e] = e;
+			nexts[e] = e;
+			return e;
+		}
+		int tail = prevs[head];
+		prevs[e] = tail;
+		nexts[e] = head;
+		nexts[tail] = e;
+		prevs[head] = e;
+		return head;
+	}
+	
+	// Removes an entry from a ring and returns the new head.
+	private static int unlink(int[] prevs, int[] nexts, int head, int e) {
+		int next = nexts[e];
+		if (next == e) {
+			return -1;
+		}
+		int prev = prevs[e];
+		nexts[prev] = next;
+		prevs[next] = prev;
+		return (head == e) ? next : head;
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.util.Arrays;
+
+/**
+ * The key buffer and node stack of a predictive search, kept so that the next search does not allocate.
+ * A cursor must not be used by two searches at the same time.
+ */
+public class PredictiveCursor {
+	byte[] key;
+	int[] ids;
+	
+	public PredictiveCursor() {
+		this(64);
+	}
+	
+	public PredictiveCursor(int capacity) {
+		key = new byte[Math.max(capacity, 16)];
+		ids = new int[key.length];
+	}
+	
+	void ensureCapacity(int capacity) {
+		if (capacity > key.length) {
+			int newSize = Math.max(capacity, key.length * 2);
+			key = Arrays.copyOf(key, newSize);
+			ids = Arrays.copyOf(ids, newSize);
+		}
+	}
+}
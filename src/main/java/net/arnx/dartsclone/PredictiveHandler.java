@@ -0,0 +1,29 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+@FunctionalInterface
+public interface PredictiveHandler {
+	/**
+	 * Receives a key found by a predictive search.
+	 * 
+	 * @param key the escaped UTF-8 key; the buffer is reused between calls
+	 * @param length the length of the key in bytes
+	 * @param value the value of the key
+	 * @return false to stop the search
+	 */
+	boolean handle(byte[] key, int length, int value);
+}
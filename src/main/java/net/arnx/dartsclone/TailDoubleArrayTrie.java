@@ -0,0 +1,475 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import net.arnx.dartsclone.internal.DoubleArrayBuilder;
+import net.arnx.dartsclone.internal.KeySet;
+
+/**
+ * A trie that keeps only the shortest unique prefix of each key in the double array.
+ * The rest of the key is stored in a packed byte TAIL next to the value and compared directly.
+ */
+public class TailDoubleArrayTrie {
+	private static final int HEADER_SIZE = 12;
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+	// A value and a tail length of up to five varint bytes.
+	private static final int MAX_RECORD_HEADER = 9;
+	
+	public static class Builder {
+		private KeySet keyset = new KeySet();
+		private byte[] buf = new byte[256];
+		
+		public Builder put(String key, int value) {
+			if (buf.length < key.length() * 3) {
+				buf = new byte[key.length() * 3];
+			}
+			
+			int length = DoubleArrayTrie.escapeKey(key, buf);
+			keyset.add(buf, 0, length, value);
+			return this;
+		}
+		
+		public TailDoubleArrayTrie build() {
+			keyset.sort(false);
+			
+			// A record is the value, the tail length as a varint and the tail bytes; its offset is the leaf value in the trie.
+			byte[] records = new byte[1024];
+			int recordSize = 0;
+			int count = 0;
+			int previous = -1;
+			
+			// A key is cut after the first byte its sorted neighbors do not share, so the prefixes stay unique and sorted.
+			DoubleArrayBuilder builder = new DoubleArrayBuilder(false);
+			for (int i = 0; i < keyset.size(); i++) {
+				int offset = keyset.offset(i);
+				int length = keyset.length(i);
+				int next = i + 1;
+				while (next < keyset.size() && keyset.length(next) == length && commonPrefixLength(i, next) == length) {
+					next++;
+				}
+				
+				int shared = (previous >= 0) ? commonPrefixLength(previous, i) : 0;
+				if (next < keyset.size()) {
+					shared = Math.max(shared, commonPrefixLength(i, next));
+				}
+				int prefix = Math.min(length, shared + 1);
+				int tailLength = length - prefix;
+				
+				if (tailLength + (long)MAX_RECORD_HEADER > MAX_ARRAY_SIZE - recordSize) {
+					throw new IllegalStateException("tails are too large.");
+				}
+				if (recordSize + tailLength + MAX_RECORD_HEADER > records.length) {
+					long capacity = Math.max((long)recordSize + tailLength + MAX_RECORD_HEADER, records.length + (records.length >> 1));
+					records = Arrays.copyOf(records, (int)Math.min(capacity, MAX_ARRAY_SIZE));
+				}
+				builder.append(keyset.bytes(), offset, prefix, recordSize);
+				
+				int value = keyset.value(i);
+				records[recordSize++] = (byte)value;
+				records[recordSize++] = (byte)(value >> 8);
+				records[recordSize++] = (byte)(value >> 16);
+				records[recordSize++] = (byte)(value >> 24);
+				int n = tailLength;
+				while (n >= 0x80) {
+					records[recordSize++] = (byte)(n | 0x80);
+					n >>>= 7;
+				}
+				records[recordSize++] = (byte)n;
+				System.arraycopy(keyset.bytes(), offset + prefix, records, recordSize, tailLength);
+				recordSize += tailLength;
+				
+				count++;
+				previous = i;
+				// Later duplicates are skipped, so the first put wins as in DoubleArrayTrie.Builder.
+				i = next - 1;
+			}
+			int[] units = builder.build();
+			keyset.clear();
+			
+			if (HEADER_SIZE + 4L * units.length + recordSize > Integer.MAX_VALUE) {
+				throw new IllegalStateException("trie is too large.");
+			}
+			return new TailDoubleArrayTrie(DoubleArrayTrie.wrap(units),
+					ByteBuffer.wrap(Arrays.copyOf(records, recordSize)).order(ByteOrder.LITTLE_ENDIAN), count);
+		}
+		
+		private int commonPrefixLength(int a, int b) {
+			byte[] bytes = keyset.bytes();
+			int offsetA = keyset.offset(a);
+			int offsetB = keyset.offset(b);
+			int min = Math.min(keyset.length(a), keyset.length(b));
+			int i = 0;
+			while (i < min && bytes[offsetA + i] == bytes[offsetB + i]) {
+				i++;
+			}
+			return i;
+		}
+	}
+	
+	public static TailDoubleArrayTrie load(InputStream in) throws IOException {
+		return load(Channels.newChannel(in));
+	}
+	
+	public static TailDoubleArrayTrie load(ReadableByteChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		DoubleArrayMap.readFully(channel, header);
+		
+		if (checkHeader(header) > Integer.MAX_VALUE) {
+			throw new IOException("failed to load: too large size");
+		}
+		
+		// Units are copied into an int[], which reads faster than an int view of a heap byte buffer.
+		ByteBuffer units = ByteBuffer.allocate(header.getInt(0) * 4).order(ByteOrder.LITTLE_ENDIAN);
+		DoubleArrayMap.readFully(channel, units);
+		int[] array = new int[header.getInt(0)];
+		units.flip();
+		units.asIntBuffer().get(array);
+		
+		ByteBuffer records = ByteBuffer.allocate(header.getInt(8)).order(ByteOrder.LITTLE_ENDIAN);
+		DoubleArrayMap.readFully(channel, records);
+		records.flip();
+		return new TailDoubleArrayTrie(DoubleArrayTrie.wrap(array), records, header.getInt(4));
+	}
+	
+	public static TailDoubleArrayTrie open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return map(channel);
+		}
+	}
+	
+	public static TailDoubleArrayTrie map(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("failed to map file: too large size");
+		}
+		
+		if (size < HEADER_SIZE) {
+			throw new IOException("failed to map file: broken header");
+		}
+		
+		ByteBuffer buf = channel.map(MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+		if (checkHeader(buf) != size) {
+			throw new IOException("failed to map file: broken size");
+		}
+		int numUnits = buf.getInt(0);
+		return new TailDoubleArrayTrie(DoubleArrayTrie.wrap(DoubleArrayMap.slice(buf, HEADER_SIZE, numUnits * 4).asIntBuffer()),
+				DoubleArrayMap.slice(buf, HEADER_SIZE + numUnits * 4, buf.getInt(8)), buf.getInt(4));
+	}
+	
+	private static long checkHeader(ByteBuffer header) throws IOException {
+		int numUnits = header.getInt(0);
+		int numKeys = header.getInt(4);
+		int recordSize = header.getInt(8);
+		if (numUnits < 0 || numKeys < 0 || recordSize < 0) {
+			throw new IOException("failed to load: broken header");
+		}
+		return HEADER_SIZE + 4L * numUnits + recordSize;
+	}
+	
+	private final DoubleArrayTrie trie;
+	private final ByteBuffer records;
+	private final int size;
+	
+	private TailDoubleArrayTrie(DoubleArrayTrie trie, ByteBuffer records, int size) {
+		this.trie = trie;
+		this.records = records;
+		this.size = size;
+	}
+	
+	public int get(String key) {
+		return get(key, 0, key.length());
+	}
+	
+	public int get(CharSequence key, int start, int end) {
+		DoubleArrayTrie.checkRange(key.length(), start, end);
+		
+		int id = 0;
+		for (int i = start; i < end; ) {
+			int cp = DoubleArrayTrie.codePointAt(key, i, end);
+			i += Character.charCount(cp);
+			
+			int bytes = DoubleArrayTrie.escapeCodePoint(cp);
+			for (int n = DoubleArrayTrie.escapedLength(cp); n > 0; n--, bytes >>>= 8) {
+				id = trie.transit(id, bytes & 0xFF);
+				if (id < 0) {
+					return -1;
+				}
+				// A record with a tail never has children, so the rest of the key must be the tail itself.
+				if (trie.hasLeafAt(id)) {
+					int record = trie.leafValue(id);
+					if (hasTail(record)) {
+						return (matchTail(record, bytes >>> 8, n - 1, key, i, end) == end) ? records.getInt(record) : -1;
+					}
+				}
+			}
+		}
+		int record = trie.leafValue(id);
+		return (record >= 0) ? records.getInt(record) : -1;
+	}
+	
+	public int get(byte[] key, int off, int len) {
+		DoubleArrayTrie.checkRange(key, off, len);
+		
+		int id = 0;
+		for (int i = off; i < off + len; ) {
+			int b = key[i++] & 0xFF;
+			
+			int bytes = (b == 0) ? DoubleArrayTrie.ESCAPED_NUL : b;
+			for (int n = (b == 0) ? 2 : 1; n > 0; n--, bytes >>>= 8) {
+				id = trie.transit(id, bytes & 0xFF);
+				if (id < 0) {
+					return -1;
+				}
+				if (trie.hasLeafAt(id)) {
+					int record = trie.leafValue(id);
+					if (hasTail(record)) {
+						return (matchTail(record, bytes >>> 8, n - 1, key, i, off + len) == off + len) ? records.getInt(record) : -1;
+					}
+				}
+			}
+		}
+		int record = trie.leafValue(id);
+		return (record >= 0) ? records.getInt(record) : -1;
+	}
+	
+	public IntStream findByCommonPrefix(String key) {
+		return findByCommonPrefix(key, 0, key.length());
+	}
+	
+	public IntStream findByCommonPrefix(CharSequence key, int start, int end) {
+		IntStream.Builder builder = IntStream.builder();
+		commonPrefixSearch(key, start, end, (value, length) -> builder.accept(value));
+		return builder.build();
+	}
+	
+	public IntStream findByCommonPrefix(byte[] key, int off, int len) {
+		IntStream.Builder builder = IntStream.builder();
+		commonPrefixSearch(key, off, len, (value, length) -> builder.accept(value));
+		return builder.build();
+	}
+	
+	public void commonPrefixSearch(String key, CommonPrefixHandler handler) {
+		commonPrefixSearch(key, 0, key.length(), handler);
+	}
+	
+	public void commonPrefixSearch(CharSequence key, int start, int end, CommonPrefixHandler handler) {
+		DoubleArrayTrie.checkRange(key.length(), start, end);
+		
+		int id = 0;
+		for (int i = start; i < end; ) {
+			int cp = DoubleArrayTrie.codePointAt(key, i, end);
+			i += Character.charCount(cp);
+			
+			int bytes = DoubleArrayTrie.escapeCodePoint(cp);
+			for (int n = DoubleArrayTrie.escapedLength(cp); n > 0; n--, bytes >>>= 8) {
+				id = trie.transit(id, bytes & 0xFF);
+				if (id < 0) {
+					return;
+				}
+				if (trie.hasLeafAt(id)) {
+					int record = trie.leafValue(id);
+					if (hasTail(record)) {
+						int matched = matchTail(record, bytes >>> 8, n - 1, key, i, end);
+						if (matched >= 0) {
+							handler.handle(records.getInt(record), matched - start);
+						}
+						return;
+					}
+					handler.handle(records.getInt(record), i - start);
+				}
+			}
+		}
+	}
+	
+	public void commonPrefixSearch(byte[] key, int off, int len, CommonPrefixHandler handler) {
+		DoubleArrayTrie.checkRange(key, off, len);
+		
+		int id = 0;
+		for (int i = off; i < off + len; ) {
+			int b = key[i++] & 0xFF;
+			
+			int bytes = (b == 0) ? DoubleArrayTrie.ESCAPED_NUL : b;
+			for (int n = (b == 0) ? 2 : 1; n > 0; n--, bytes >>>= 8) {
+				id = trie.transit(id, bytes & 0xFF);
+				if (id < 0) {
+					return;
+				}
+				if (trie.hasLeafAt(id)) {
+					int record = trie.leafValue(id);
+					if (hasTail(record)) {
+						int matched = matchTail(record, bytes >>> 8, n - 1, key, i, off + len);
+						if (matched >= 0) {
+							handler.handle(records.getInt(record), matched - off);
+						}
+						return;
+					}
+					handler.handle(records.getInt(record), i - off);
+				}
+			}
+		}
+	}
+	
+	// Compares the tail with the rest of the key, starting with the bytes left over from the current code point.
+	// Returns the key position just after the tail, or -1 when the tail does not match.
+	private int matchTail(int record, int bytes, int n, CharSequence key, int i, int end) {
+		int position = record + 4;
+		int length = tailLength(record);
+		position += varintSize(length);
+		for (int tailEnd = position + length; position < tailEnd; position++, n--, bytes >>>= 8) {
+			if (n == 0) {
+				if (i >= end) {
+					return -1;
+				}
+				int cp = DoubleArrayTrie.codePointAt(key, i, end);
+				i += Character.charCount(cp);
+				bytes = DoubleArrayTrie.escapeCodePoint(cp);
+				n = DoubleArrayTrie.escapedLength(cp);
+			}
+			if ((records.get(position) & 0xFF) != (bytes & 0xFF)) {
+				return -1;
+			}
+		}
+		return (n == 0) ? i : -1;
+	}
+	
+	private int matchTail(int record, int bytes, int n, byte[] key, int i, int end) {
+		int position = record + 4;
+		int length = tailLength(record);
+		position += varintSize(length);
+		for (int tailEnd = position + length; position < tailEnd; position++, n--, bytes >>>= 8) {
+			if (n == 0) {
+				if (i >= end) {
+					return -1;
+				}
+				int b = key[i++] & 0xFF;
+				bytes = (b == 0) ? DoubleArrayTrie.ESCAPED_NUL : b;
+				n = (b == 0) ? 2 : 1;
+			}
+			if ((records.get(position) & 0xFF) != (bytes & 0xFF)) {
+				return -1;
+			}
+		}
+		return (n == 0) ? i : -1;
+	}
+	
+	private boolean hasTail(int record) {
+		// The tail length is a varint, and only zero starts with a zero byte.
+		return records.get(record + 4) != 0;
+	}
+	
+	private int tailLength(int record) {
+		int length = 0;
+		for (int position = record + 4, shift = 0; ; shift += 7) {
+			int b = records.get(position++);
+			length |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return length;
+			}
+		}
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public int recordSize() {
+		return records.limit();
+	}
+	
+	public void writeTo(OutputStream out) throws IOException {
+		writeTo(Channels.newChannel(out));
+	}
+	
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(trie.size());
+		header.putInt(size);
+		header.putInt(records.limit());
+		header.flip();
+		while (header.hasRemaining()) {
+			channel.write(header);
+		}
+		
+		trie.writeTo(channel);
+		
+		ByteBuffer src = records.duplicate();
+		while (src.hasRemaining()) {
+			channel.write(src);
+		}
+	}
+	
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + trie.hashCode();
+		result = prime * result + records.hashCode();
+		return result;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (getClass() != obj.getClass()) {
+			return false;
+		}
+		TailDoubleArrayTrie other = (TailDoubleArrayTrie) obj;
+		if (size != other.size) {
+			return false;
+		}
+		if (!trie.equals(other.trie)) {
+			return false;
+		}
+		if (!records.equals(other.records)) {
+			return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public String toString() {
+		return "TailDoubleArrayTrie [size=" + size() + ", trie=" + trie.size() + " units, records=" + recordSize() + " bytes]";
+	}
+	
+	private static int varintSize(int value) {
+		int size = 1;
+		while (value >= 0x80) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+}
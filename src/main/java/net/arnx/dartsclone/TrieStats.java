@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import net.arnx.dartsclone.util.IntList;
+
+/**
+ * Layout statistics of a built trie, computed by walking its units.
+ */
+public class TrieStats {
+	public static TrieStats of(DoubleArrayTrie trie) {
+		return new TrieStats(trie);
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("usage: java " + TrieStats.class.getName() + " <file>...");
+			System.exit(2);
+		}
+		
+		for (String arg : args) {
+			System.out.println(arg);
+			System.out.println(of(DoubleArrayTrie.open(Paths.get(arg))));
+		}
+	}
+	
+	private final int units;
+	private int usedUnits;
+	private int nodes;
+	private int leaves;
+	private int sharedNodes;
+	private long sharedEdges;
+	private int extendedOffsets;
+	private long keys;
+	private long treeNodes;
+	private long[] depths = new long[16];
+	private final long[] fanOuts = new long[256];
+	
+	private TrieStats(DoubleArrayTrie trie) {
+		this.units = trie.size();
+		if (units > 0) {
+			walkNodes(trie);
+			walkKeys(trie);
+		}
+	}
+	
+	// Visits every distinct node once; a child that is already visited is a subtree shared by the DAWG.
+	private void walkNodes(DoubleArrayTrie trie) {
+		BitSet visited = new BitSet(units);
+		BitSet shared = new BitSet();
+		IntList stack = new IntList();
+		visited.set(0);
+		stack.add(0);
+		while (!stack.isEmpty()) {
+			int id = stack.remove(stack.size() - 1);
+			int unit = trie.unitAt(id);
+			nodes++;
+			usedUnits++;
+			if ((unit & (1 << 9)) != 0) {
+				extendedOffsets++;
+			}
+			
+			int offset = id ^ DoubleArrayTrie.offset(unit);
+			if (DoubleArrayTrie.hasLeaf(unit)) {
+				leaves++;
+				// nodes merged by the DAWG can point at the same child block, and so at the same value unit
+				if (!visited.get(offset)) {
+					visited.set(offset);
+					usedUnits++;
+				}
+			}
+			
+			int fanOut = 0;
+			for (int label = 1; label <= 0xFF; label++) {
+				int child = offset ^ label;
+				if (child < 0 || child >= units || DoubleArrayTrie.label(trie.unitAt(child)) != label) {
+					continue;
+				}
+				fanOut++;
+				if (visited.get(child)) {
+					sharedEdges++;
+					if (!shared.get(child)) {
+						shared.set(child);
+						sharedNodes++;
+					}
+				} else {
+					visited.set(child);
+					stack.add(child);
+				}
+			}
+			fanOuts[fanOut]++;
+		}
+	}
+	
+	// Follows every path from the root, so shared subtrees are counted once per key that reaches them.
+	private void walkKeys(DoubleArrayTrie trie) {
+		IntList ids = new IntList();
+		IntList labels = new IntList();
+		int id = 0;
+		int label = 0;
+		while (true) {
+			int unit = trie.unitAt(id);
+			if (label == 0) {
+				treeNodes++;
+				if (DoubleArrayTrie.hasLeaf(unit)) {
+					keys++;
+					int depth = ids.size();
+					if (depth >= depths.length) {
+						depths = Arrays.copyOf(depths, Math.max(depth + 1, depths.length * 2));
+					}
+					depths[depth]++;
+				}
+			}
+			
+			int offset = id ^ DoubleArrayTrie.offset(unit);
+			int child = -1;
+			for (label++; label <= 0xFF; label++) {
+				int next = offset ^ label;
+				if (next >= 0 && next < units && DoubleArrayTrie.label(trie.unitAt(next)) == label) {
+					child = next;
+					break;
+				}
+			}
+			
+			if (child >= 0) {
+				ids.add(id);
+				labels.add(label);
+				id = child;
+				label = 0;
+			} else if (!ids.isEmpty()) {
+				id = ids.remove(ids.size() - 1);
+				label = labels.remove(labels.size() - 1);
+			} else {
+				break;
+			}
+		}
+	}
+	
+	public int units() {
+		return units;
+	}
+	
+	public int usedUnits() {
+		return usedUnits;
+	}
+	
+	public int unusedUnits() {
+		return units - usedUnits;
+	}
+	
+	public double fillRatio() {
+		return (units > 0) ? (double)usedUnits / units : 0.0;
+	}
+	
+	public int nodes() {
+		return nodes;
+	}
+	
+	public int leaves() {
+		return leaves;
+	}
+	
+	public long keys() {
+		return keys;
+	}
+	
+	public int sharedNodes() {
+		return sharedNodes;
+	}
+	
+	public long sharedEdges() {
+		return sharedEdges;
+	}
+	
+	public double sharingRatio() {
+		return (nodes > 0) ? (double)treeNodes / nodes : 0.0;
+	}
+	
+	public int extendedOffsets() {
+		return extendedOffsets;
+	}
+	
+	public double bytesPerKey() {
+		return (keys > 0) ? 4.0 * units / keys : 0.0;
+	}
+	
+	public long[] depthHistogram() {
+		int length = depths.length;
+		while (length > 0 && depths[length - 1] == 0) {
+			length--;
+		}
+		return Arrays.copyOf(depths, length);
+	}
+	
+	public long[] fanOutHistogram() {
+		int length = fanOuts.length;
+		while (length > 0 && fanOuts[length - 1] == 0) {
+			length--;
+		}
+		return Arrays.copyOf(fanOuts, length);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("units:            %d (%d bytes)%n", units, 4L * units));
+		sb.append(String.format("used units:       %d (fill ratio %.3f, %d unused)%n", usedUnits, fillRatio(), unusedUnits()));
+		sb.append(String.format("keys:             %d (%.2f bytes per key)%n", keys, bytesPerKey()));
+		sb.append(String.format("nodes:            %d (%d with a leaf)%n", nodes, leaves));
+		sb.append(String.format("shared nodes:     %d (%d extra edges, tree/DAWG nodes %.2f)%n", sharedNodes, sharedEdges, sharingRatio()));
+		sb.append(String.format("extended offsets: %d%n", extendedOffsets));
+		appendHistogram(sb, "depth", depthHistogram(), keys);
+		appendHistogram(sb, "fan-out", fanOutHistogram(), nodes);
+		return sb.toString();
+	}
+	
+	private static void appendHistogram(StringBuilder sb, String name, long[] histogram, long total) {
+		sb.append(name).append(':').append(String.format("%n"));
+		for (int i = 0; i < histogram.length; i++) {
+			if (histogram[i] > 0) {
+				sb.append(String.format("  %3d %10d %6.2f%%%n", i, histogram[i], 100.0 * histogram[i] / total));
+			}
+		}
+	}
+}
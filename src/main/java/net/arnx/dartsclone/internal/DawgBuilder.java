@@ -16,11 +16,13 @@
 package net.arnx.dartsclone.internal;
 
 import net.arnx.dartsclone.util.BooleanList;
+import net.arnx.dartsclone.util.HeapIntStorage;
 import net.arnx.dartsclone.util.IntList;
+import net.arnx.dartsclone.util.IntStorageFactory;
 
 public class DawgBuilder {
 	private static final int INITIAL_TABLE_SIZE = 1 << 10;
-	private static final int IS_UNIT_SIZE = 32 * 8;
+	private static final int IS_UNIT_SIZE = 32;
 	
 	private static int hash(int key) {
 		key = ~key + (key << 15);
@@ -32,40 +34,115 @@ public class DawgBuilder {
 		return key;
 	}
 	
-	private static int popCount(int unit) {
-		unit = ((unit & 0xAAAAAAAA) >> 1) + (unit & 0x55555555);
-		unit = ((unit & 0xCCCCCCCC) >> 2) + (unit & 0x33333333);
-		unit = ((unit >> 4) + unit) & 0x0F0F0F0F;
-		unit += unit >> 8;
-		unit += unit >> 16;
-		return unit & 0xFF;
-	}
-	
-	private IntList nodeChilds = new IntList();
-	private IntList nodeSiblings = new IntList();
-	private IntList nodeLabels = new IntList();
-	private BooleanList isNodeStates = new BooleanList();
-	private BooleanList hasNodeSiblings = new BooleanList();
+	private final IntList nodeChilds;
+	private final IntList nodeSiblings;
+	private final IntList nodeLabels;
+	private final BooleanList isNodeStates;
+	private final BooleanList hasNodeSiblings;
 	
-	private IntList units = new IntList();
-	private IntList labels = new IntList();
+	private final IntList units;
+	private final IntList labels;
 	
-	private IntList isIntersectionUnits = new IntList();
-	private IntList isIntersectionRanks = new IntList();
+	private final IntList isIntersectionUnits;
+	private final IntList isIntersectionRanks;
 	private int isIntersectionNumOnes;
 	private int isIntersectionSize;
 
-	private IntList table = new IntList();
-	private IntList nodeStack = new IntList();
-	private IntList recycleBin = new IntList();
+	private final IntList table;
+	private final IntList nodeStack;
+	private final IntList recycleBin;
 	private int numStates;
+	private int numTableExpansions;
+	
+	public DawgBuilder() {
+		this(HeapIntStorage::new);
+	}
+	
+	public DawgBuilder(IntStorageFactory storage) {
+		nodeChilds = new IntList(storage);
+		nodeSiblings = new IntList(storage);
+		nodeLabels = new IntList(storage);
+		isNodeStates = new BooleanList(storage);
+		hasNodeSiblings = new BooleanList(storage);
+		
+		units = new IntList(storage);
+		labels = new IntList(storage);
+		
+		isIntersectionUnits = new IntList(storage);
+		isIntersectionRanks = new IntList(storage);
+		
+		table = new IntList(storage);
+		nodeStack = new IntList();
+		recycleBin = new IntList();
+	}
+	
+	public static DawgBuilder merge(IntStorageFactory storage, DawgBuilder... dawgs) {
+		DawgBuilder merged = new DawgBuilder(storage);
+		merged.appendUnit();
+		
+		int[] bases = new int[dawgs.length];
+		for (int i = 0; i < dawgs.length; i++) {
+			DawgBuilder dawg = dawgs[i];
+			bases[i] = merged.units.size() - 1;
+			for (int id = 1; id < dawg.units.size(); id++) {
+				int unitId = merged.appendUnit();
+				merged.units.set(unitId, relocateUnit(dawg, id, bases[i]));
+				merged.labels.set(unitId, dawg.labels.get(id));
+				if (dawg.isIntersection(id)) {
+					int unit = merged.isIntersectionUnits.get(unitId / IS_UNIT_SIZE);
+					merged.isIntersectionUnits.set(unitId / IS_UNIT_SIZE, unit | (1 << (unitId % IS_UNIT_SIZE)));
+				}
+			}
+		}
+		
+		// The first levels are disjoint, so they are chained into one sibling group under the new root.
+		int childId = 0;
+		int lastId = 0;
+		for (int i = 0; i < dawgs.length; i++) {
+			DawgBuilder dawg = dawgs[i];
+			for (int id = dawg.child(0); id != 0; id = dawg.sibling(id)) {
+				int unitId = merged.appendUnit();
+				merged.units.set(unitId, (relocateUnit(dawg, id, bases[i]) & ~2) | 1);
+				merged.labels.set(unitId, dawg.labels.get(id));
+				if (childId == 0) {
+					childId = unitId;
+					merged.units.set(unitId, merged.units.get(unitId) | 2);
+				}
+				lastId = unitId;
+			}
+		}
+		if (lastId != 0) {
+			merged.units.set(lastId, merged.units.get(lastId) & ~1);
+		}
+		for (DawgBuilder dawg : dawgs) {
+			merged.numTableExpansions += dawg.numTableExpansions;
+		}
+		merged.units.set(0, childId << 2);
+		merged.labels.set(0, 0xFF);
+		
+		merged.isIntersectionRanks.resize(merged.isIntersectionUnits.size());
+		merged.isIntersectionNumOnes = 0;
+		for (int i = 0; i < merged.isIntersectionUnits.size(); ++i) {
+			merged.isIntersectionRanks.set(i, merged.isIntersectionNumOnes);
+			merged.isIntersectionNumOnes += Integer.bitCount(merged.isIntersectionUnits.get(i));
+		}
+		return merged;
+	}
+	
+	private static int relocateUnit(DawgBuilder dawg, int id, int base) {
+		int unit = dawg.units.get(id);
+		if (dawg.labels.get(id) == 0) {
+			return unit;
+		}
+		return ((dawg.child(id) + base) << 2) | (unit & 3);
+	}
 	
 	public int root() {
 		return 0;
 	}
 
 	public int child(int id) {
-		return units.get(id) >> 2;
+		return units.get(id) >>> 2;
 	}
 	
 	public int sibling(int id) {
@@ -73,7 +150,7 @@ public class DawgBuilder {
 	}
 	
 	public int value(int id) {
-		return units.get(id) >> 1;
+		return units.get(id) >>> 1;
 	}
 
 	private boolean hasSibling(int index) {
@@ -99,10 +176,14 @@ public class DawgBuilder {
 	public int intersectionId(int id) {
 		int unitId = id / IS_UNIT_SIZE;
 		int rank = isIntersectionRanks.get(unitId) 
-				+ popCount(isIntersectionUnits.get(unitId) & (~0 >> (IS_UNIT_SIZE - (id % IS_UNIT_SIZE) - 1)));
+				+ Integer.bitCount(isIntersectionUnits.get(unitId) & (~0 >>> (IS_UNIT_SIZE - (id % IS_UNIT_SIZE) - 1)));
 		return rank - 1;
 	}
 	
+	public int numTableExpansions() {
+		return numTableExpansions;
+	}
+	
 	public int numIntersections() {
 		return isIntersectionNumOnes;
 	}
@@ -145,11 +226,15 @@ public class DawgBuilder {
 		isIntersectionNumOnes = 0;
 		for (int i = 0; i < isIntersectionUnits.size(); ++i) {
 			isIntersectionRanks.set(i, isIntersectionNumOnes);
-			isIntersectionNumOnes += popCount(isIntersectionUnits.get(i));
+			isIntersectionNumOnes += Integer.bitCount(isIntersectionUnits.get(i));
 		}
 	}
 	
 	public void insert(byte[] key, int length, int value) {
+		insert(key, 0, length, value);
+	}
+	
+	public void insert(byte[] key, int offset, int length, int value) {
 		if (value < 0) {
 			throw new IllegalArgumentException("failed to insert key: negative value");
 		} else if (length <= 0) {
@@ -165,7 +250,7 @@ public class DawgBuilder {
 				break;
 			}
 
-			int keyLabel = (keyPos < length) ? (key[keyPos] & 0xFF) : 0;
+			int keyLabel = (keyPos < length) ? (key[offset + keyPos] & 0xFF) : 0;
 			int unitLabel = nodeLabels.get(childId);
 			if (keyLabel < unitLabel) {
 				throw new IllegalStateException("failed to insert key: wrong key order");
@@ -182,7 +267,7 @@ public class DawgBuilder {
 		}
 
 		for ( ; keyPos <= length; keyPos++) {
-			int keyLabel = (keyPos < length) ? (key[keyPos] & 0xFF) : 0;
+			int keyLabel = (keyPos < length) ? (key[offset + keyPos] & 0xFF) : 0;
 			int childId = appendNode();
 
 			if (nodeChilds.get(id) == 0) {
@@ -216,6 +301,7 @@ public class DawgBuilder {
 		nodeStack.clear();
 		recycleBin.clear();
 		numStates = 0;
+		numTableExpansions = 0;
 	}
 
 	private int appendNode() {
@@ -296,6 +382,7 @@ public class DawgBuilder {
 	}
 
 	private void expandTable() {
+		numTableExpansions++;
 		int tableSize = table.size() << 1;
 		table.clear();
 		table.resize(tableSize);
@@ -15,8 +15,12 @@
  */
 package net.arnx.dartsclone.internal;
 
+import java.util.function.IntConsumer;
+
 import net.arnx.dartsclone.util.BooleanList;
+import net.arnx.dartsclone.util.HeapIntStorage;
 import net.arnx.dartsclone.util.IntList;
+import net.arnx.dartsclone.util.IntStorageFactory;
 
 public class DoubleArrayBuilder {
 	private static final int BLOCK_SIZE = 256;
@@ -24,6 +28,7 @@ public class DoubleArrayBuilder {
 	private static final int NUM_EXTRAS = BLOCK_SIZE * NUM_EXTRA_BLOCKS;
 	private static final int UPPER_MASK = 0xFF << 21;
 	private static final int LOWER_MASK = 0xFF;
+	private static final int CHECKPOINT_MASK = (1 << 12) - 1;
 	
 	private static void setHasLeaf(IntList units, int index, boolean hasLeaf) {
 		int unit = units.get(index);
@@ -61,39 +66,84 @@ public class DoubleArrayBuilder {
 		units.set(index, unit);
 	}
 	
-	private DawgBuilder dawg = new DawgBuilder();
+	private final IntStorageFactory storage;
+	private final DawgBuilder dawg;
+	private boolean shareSubtrees;
 	
 	private IntList prevs = new IntList(NUM_EXTRAS, NUM_EXTRAS);
 	private IntList nexts = new IntList(NUM_EXTRAS, NUM_EXTRAS);
 	private BooleanList isFixeds = new BooleanList(NUM_EXTRAS, NUM_EXTRAS);
 	private BooleanList isUseds = new BooleanList(NUM_EXTRAS, NUM_EXTRAS);
 	private int head;
+	private IntList parents;
+	private IntConsumer checkpoint;
+	private int numArranged;
 	
 	public DoubleArrayBuilder() {
+		this(true);
+	}
+	
+	public DoubleArrayBuilder(boolean shareSubtrees) {
+		this(shareSubtrees, HeapIntStorage::new);
+	}
+	
+	public DoubleArrayBuilder(boolean shareSubtrees, IntStorageFactory storage) {
+		this.storage = storage;
+		this.shareSubtrees = shareSubtrees;
+		dawg = new DawgBuilder(storage);
 		dawg.init();
 	}
 	
+	public DawgBuilder dawg() {
+		return dawg;
+	}
+	
+	public void setCheckpoint(IntConsumer checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+	
+	public void setParents(IntList parents) {
+		this.parents = parents;
+	}
+	
 	public void append(byte[] key, int length, int value) {
 		dawg.insert(key, length, value);
 	}
 	
+	public void append(byte[] key, int offset, int length, int value) {
+		dawg.insert(key, offset, length, value);
+	}
+	
 	public int[] build() {
 		dawg.finish();
+		return build(dawg);
+	}
+	
+	public int[] build(DawgBuilder dawg) {
+		if (parents != null) {
+			if (shareSubtrees) {
+				throw new IllegalStateException("failed to build parents: shared subtrees");
+			}
+			parents.clear();
+		}
 		
-		IntList units = new IntList();
+		IntList units = new IntList(storage);
 		
 		reserveId(units, 0);
 		isUseds.set(0, true);
 		setOffset(units, 0, 1);
 		setLabel(units, 0, 0);
 
-		IntList table = new IntList(dawg.numIntersections(), dawg.numIntersections());
+		IntList table = new IntList(storage, dawg.numIntersections(), dawg.numIntersections());
 		if (dawg.child(dawg.root()) != 0) {
 			buildFromDawg(units, dawg, dawg.root(), 0, table);
 		}
 
 		fixAllBlocks(units);
 		
+		if (parents != null) {
+			parents.resize(units.size());
+		}
 		return units.toArray();
 	}
 	
@@ -108,7 +158,7 @@ public class DoubleArrayBuilder {
 	
 	private void buildFromDawg(IntList units, DawgBuilder dawg, int dawgId, int dicId, IntList table) {
 		int dawgChildId = dawg.child(dawgId);
-		if (dawg.isIntersection(dawgChildId)) {
+		if (shareSubtrees && dawg.isIntersection(dawgChildId)) {
 			int intersectionId = dawg.intersectionId(dawgChildId);
 			int offset = table.get(intersectionId);
 			if (offset != 0) {
@@ -124,7 +174,7 @@ public class DoubleArrayBuilder {
 		}
 
 		int offset = arrangeFromDawg(units, dawg, dawgId, dicId);
-		if (dawg.isIntersection(dawgChildId)) {
+		if (shareSubtrees && dawg.isIntersection(dawgChildId)) {
 			table.set(dawg.intersectionId(dawgChildId), offset);
 		}
 
@@ -160,11 +210,22 @@ public class DoubleArrayBuilder {
 				setValue(units, dicChildId, dawg.value(dawgChildId));
 			} else {
 				setLabel(units, dicChildId, labels.get(i));
+				if (parents != null) {
+					if (dicChildId >= parents.size()) {
+						parents.resize(units.size());
+					}
+					parents.set(dicChildId, dicId);
+				}
 			}
 
 			dawgChildId = dawg.sibling(dawgChildId);
 		}
 		isUseds.set(offset % NUM_EXTRAS, true);
+		
+		numArranged++;
+		if (checkpoint != null && (numArranged & CHECKPOINT_MASK) == 0) {
+			checkpoint.accept(numArranged);
+		}
 
 		return offset;
 	}
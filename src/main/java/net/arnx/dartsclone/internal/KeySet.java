@@ -0,0 +1,210 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone.internal;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+public class KeySet {
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+	
+	private byte[] bytes = new byte[1024];
+	private int bytesSize;
+	
+	private int[] offsets = new int[16];
+	private int[] lengths = new int[16];
+	private int[] values = new int[16];
+	private int size;
+	
+	private int[] order;
+	
+	public void add(byte[] key, int offset, int length, int value) {
+		if (key == null || length <= 0) {
+			throw new IllegalArgumentException("key must not be empty.");
+		}
+		if (value < 0) {
+			throw new IllegalArgumentException("value must not be negative.");
+		}
+		
+		if (bytesSize + length > bytes.length) {
+			if (bytesSize + length > MAX_ARRAY_SIZE) {
+				throw new IllegalStateException("keyset is too large.");
+			}
+			long capacity = Math.max((long)bytesSize + length, bytes.length + (bytes.length >> 1));
+			bytes = Arrays.copyOf(bytes, (int)Math.min(capacity, MAX_ARRAY_SIZE));
+		}
+		if (size == offsets.length) {
+			int capacity = size + Math.min(size >> 1, MAX_ARRAY_SIZE - size);
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		
+		System.arraycopy(key, offset, bytes, bytesSize, length);
+		offsets[size] = bytesSize;
+		lengths[size] = length;
+		values[size] = value;
+		bytesSize += length;
+		size++;
+		order = null;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public long byteSize() {
+		return bytesSize + 4L * 4 * size;
+	}
+	
+	public byte[] bytes() {
+		return bytes;
+	}
+	
+	public int offset(int index) {
+		return offsets[index(index)];
+	}
+	
+	public int length(int index) {
+		return lengths[index(index)];
+	}
+	
+	public int value(int index) {
+		return values[index(index)];
+	}
+	
+	public void sort(boolean parallel) {
+		int[] order = new int[size];
+		
+		// Most significant byte first: a stable counting pass splits the keys into 256 buckets.
+		int[] starts = new int[257];
+		for (int i = 0; i < size; i++) {
+			starts[(bytes[offsets[i]] & 0xFF) + 1]++;
+		}
+		for (int i = 0; i < 256; i++) {
+			starts[i + 1] += starts[i];
+		}
+		int[] positions = Arrays.copyOf(starts, 256);
+		for (int i = 0; i < size; i++) {
+			order[positions[bytes[offsets[i]] & 0xFF]++] = i;
+		}
+		
+		IntStream buckets = IntStream.range(0, 256);
+		if (parallel) {
+			buckets = buckets.parallel();
+		}
+		buckets.forEach(i -> sort(order, starts[i], starts[i + 1], 1));
+		
+		this.order = order;
+	}
+	
+	public void clear() {
+		bytesSize = 0;
+		size = 0;
+		order = null;
+	}
+	
+	private int index(int index) {
+		if (index >= size) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+		return order != null ? order[index] : index;
+	}
+	
+	private void sort(int[] order, int lo, int hi, int depth) {
+		while (hi - lo > 1) {
+			if (hi - lo < INSERTION_SORT_THRESHOLD) {
+				insertionSort(order, lo, hi, depth);
+				return;
+			}
+			
+			int pivot = median(
+					byteAt(order[lo], depth), 
+					byteAt(order[(lo + hi) >>> 1], depth), 
+					byteAt(order[hi - 1], depth));
+			int lt = lo;
+			int gt = hi - 1;
+			for (int i = lo; i <= gt; ) {
+				int c = byteAt(order[i], depth);
+				if (c < pivot) {
+					swap(order, lt++, i++);
+				} else if (c > pivot) {
+					swap(order, i, gt--);
+				} else {
+					i++;
+				}
+			}
+			
+			sort(order, lo, lt, depth);
+			sort(order, gt + 1, hi, depth);
+			if (pivot < 0) {
+				// Duplicate keys keep insertion order, so the first put wins in DawgBuilder.
+				Arrays.sort(order, lt, gt + 1);
+				return;
+			}
+			lo = lt;
+			hi = gt + 1;
+			depth++;
+		}
+	}
+	
+	private void insertionSort(int[] order, int lo, int hi, int depth) {
+		for (int i = lo + 1; i < hi; i++) {
+			int index = order[i];
+			int j = i;
+			for (; j > lo && compare(order[j - 1], index, depth) > 0; j--) {
+				order[j] = order[j - 1];
+			}
+			order[j] = index;
+		}
+	}
+	
+	private int compare(int a, int b, int depth) {
+		int min = Math.min(lengths[a], lengths[b]);
+		for (int i = depth; i < min; i++) {
+			int result = (bytes[offsets[a] + i] & 0xFF) - (bytes[offsets[b] + i] & 0xFF);
+			if (result != 0) {
+				return result;
+			}
+		}
+		if (lengths[a] != lengths[b]) {
+			return lengths[a] - lengths[b];
+		}
+		return a - b;
+	}
+	
+	private int byteAt(int index, int depth) {
+		return depth < lengths[index] ? bytes[offsets[index] + depth] & 0xFF : -1;
+	}
+	
+	private static int median(int a, int b, int c) {
+		if (a < b) {
+			return b < c ? b : (a < c ? c : a);
+		}
+		return a < c ? a : (b < c ? c : b);
+	}
+	
+	private static void swap(int[] order, int a, int b) {
+		int tmp = order[a];
+		order[a] = order[b];
+		order[b] = tmp;
+	}
+}
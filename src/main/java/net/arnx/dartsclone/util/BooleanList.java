@@ -15,12 +15,8 @@
  */
 package net.arnx.dartsclone.util;
 
-import java.util.Arrays;
-
 public class BooleanList {
-	private static final int[] EMPTY = new int[0];
-	
-	private int[] buf;
+	private final IntStorage buf;
 	private int size;
 	
 	public BooleanList() {
@@ -32,21 +28,40 @@ public class BooleanList {
 	}
 	
 	public BooleanList(int capacity, int size) {
+		this(HeapIntStorage::new, capacity, size);
+	}
+	
+	public BooleanList(IntStorageFactory factory) {
+		this(factory, 0, 0);
+	}
+	
+	public BooleanList(IntStorageFactory factory, int capacity, int size) {
 		if (capacity < size) {
 			throw new IndexOutOfBoundsException();
 		}
 		
-		if (capacity == 0) {
-			this.buf = EMPTY;
-		} else {
-			this.buf = new int[(capacity + (32 - 1)) / 32];
+		this.buf = factory.create();
+		if (capacity > 0) {
+			this.buf.reserve((capacity + (32 - 1)) / 32);
 		}
 		this.size = size;
 	}
 	
 	public void resize(int newSize) {
 		if (size != newSize) {
-			buf = Arrays.copyOf(buf, (newSize + (32 - 1)) / 32);
+			int words = (newSize + (32 - 1)) / 32;
+			if (words > buf.capacity()) {
+				buf.reserve(Math.max(words, buf.capacity() + (buf.capacity() >> 1)));
+			}
+			if (newSize > size) {
+				int pos = size / 32;
+				int offset = size % 32;
+				if (offset != 0) {
+					buf.set(pos, buf.get(pos) & ~(-1 << offset));
+					pos++;
+				}
+				buf.fill(pos, words, 0);
+			}
 			size = newSize;
 		}
 	}
@@ -55,7 +70,7 @@ public class BooleanList {
 		if (index < size) {
 			int pos = index / 32;
 			int offset = index % 32;
-			return (buf[pos] & (1L << offset)) != 0;
+			return (buf.get(pos) & (1 << offset)) != 0;
 		}
 		throw new ArrayIndexOutOfBoundsException();
 	}
@@ -64,17 +79,17 @@ public class BooleanList {
 		int pos = size / 32;
 		int offset = size % 32;
 		
-		if (pos + 1 > buf.length) {
+		if (pos + 1 > buf.capacity()) {
 			int newSize = Math.max(pos + 1, 2);
 			newSize += (newSize >> 1);
 			
-			buf = Arrays.copyOf(buf, Math.min(newSize, Integer.MAX_VALUE));
+			buf.reserve(Math.min(newSize, Integer.MAX_VALUE - 8));
 		}
 		
 		if (value) {
-			buf[pos] |= (1L << offset);
+			buf.set(pos, buf.get(pos) | (1 << offset));
 		} else {
-			buf[pos] &= ~(1L << offset);
+			buf.set(pos, buf.get(pos) & ~(1 << offset));
 		}
 		
 		size++;
@@ -84,11 +99,12 @@ public class BooleanList {
 		if (index < size) {
 			int pos = index / 32;
 			int offset = index % 32;
-			boolean old = (buf[pos] & (1L << offset)) != 0;
+			int word = buf.get(pos);
+			boolean old = (word & (1 << offset)) != 0;
 			if (value) {
-				buf[pos] |= (1L << offset);
+				buf.set(pos, word | (1 << offset));
 			} else {
-				buf[pos] &= ~(1L << offset);
+				buf.set(pos, word & ~(1 << offset));
 			}
 			return old;
 		}
@@ -96,7 +112,7 @@ public class BooleanList {
 	}
 	
 	public void clear() {
-		buf = EMPTY;
+		buf.release();
 		size = 0;
 	}
 	
@@ -111,10 +127,7 @@ public class BooleanList {
 	public String toBinaryString() {
 		StringBuilder sb = new StringBuilder();
 		for (int i = 0; i < size; i++) {
-			long value = buf[i];
-			for (int shift = 0; shift < 32; shift++) {
-				sb.append(((value >> shift) & 0x1) != 0 ? '1' : '0');
-			}
+			sb.append(get(i) ? '1' : '0');
 		}
 		return sb.toString();
 	}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone.util;
+
+import java.util.Arrays;
+
+public class HeapIntStorage implements IntStorage {
+	private static final int[] EMPTY = new int[0];
+	
+	public static HeapIntStorage wrap(int[] array) {
+		HeapIntStorage storage = new HeapIntStorage();
+		storage.buf = array;
+		return storage;
+	}
+	
+	private int[] buf = EMPTY;
+	
+	@Override
+	public int get(int index) {
+		return buf[index];
+	}
+	
+	@Override
+	public void set(int index, int value) {
+		buf[index] = value;
+	}
+	
+	@Override
+	public int capacity() {
+		return buf.length;
+	}
+	
+	@Override
+	public void reserve(int capacity) {
+		if (capacity > buf.length) {
+			buf = Arrays.copyOf(buf, capacity);
+		}
+	}
+	
+	@Override
+	public void release() {
+		buf = EMPTY;
+	}
+	
+	@Override
+	public void fill(int fromIndex, int toIndex, int value) {
+		Arrays.fill(buf, fromIndex, toIndex, value);
+	}
+	
+	@Override
+	public void copy(int srcIndex, int destIndex, int length) {
+		System.arraycopy(buf, srcIndex, buf, destIndex, length);
+	}
+	
+	@Override
+	public void get(int index, int[] dest, int offset, int length) {
+		System.arraycopy(buf, index, dest, offset, length);
+	}
+}
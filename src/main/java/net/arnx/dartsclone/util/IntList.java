@@ -15,19 +15,14 @@
  */
 package net.arnx.dartsclone.util;
 
-import java.util.Arrays;
-
 public class IntList {
 	public static IntList wrap(int[] array) {
-		IntList list = new IntList(0);
-		list.buf = array;
+		IntList list = new IntList(HeapIntStorage.wrap(array));
 		list.size = array.length;
 		return list;
 	}
 	
-	private static final int[] EMPTY = new int[0];
-	
-	private int[] buf;
+	private final IntStorage buf;
 	private int size;
 	
 	public IntList() {
@@ -39,62 +34,77 @@ public class IntList {
 	}
 	
 	public IntList(int capacity, int size) {
+		this(HeapIntStorage::new, capacity, size);
+	}
+	
+	public IntList(IntStorageFactory factory) {
+		this(factory, 0, 0);
+	}
+	
+	public IntList(IntStorageFactory factory, int capacity, int size) {
 		if (capacity < size) {
 			throw new IndexOutOfBoundsException();
 		}
 		
-		if (capacity == 0) {
-			this.buf = EMPTY;
-		} else {
-			this.buf = new int[capacity];
+		this.buf = factory.create();
+		if (capacity > 0) {
+			this.buf.reserve(capacity);
 		}
 		this.size = size;
 	}
 	
+	private IntList(IntStorage buf) {
+		this.buf = buf;
+	}
+	
 	public int get(int index) {
 		if (index < size) {
-			return buf[index];
+			return buf.get(index);
 		}
 		throw new ArrayIndexOutOfBoundsException();
 	}
 	
 	public void add(int value) {
-		if (size + 1 > buf.length) {
+		if (size + 1 > buf.capacity()) {
 			int newSize = Math.max(size + 1, 2);
 			newSize += (newSize >> 1);
 			
-			buf = Arrays.copyOf(buf, Math.min(newSize, Integer.MAX_VALUE));
+			buf.reserve(Math.min(newSize, Integer.MAX_VALUE - 8));
 		}
-		buf[size++] = value;
+		buf.set(size++, value);
 	}
 	
 	public int set(int index, int value) {
 		if (index < size) {
-			int old = buf[index];
-			buf[index] = value;
+			int old = buf.get(index);
+			buf.set(index, value);
 			return old;
 		}
 		throw new ArrayIndexOutOfBoundsException();
 	}
 	
 	public void resize(int newSize) {
-		if (size != newSize) {
-			buf = Arrays.copyOf(buf, newSize);
-			size = newSize;
+		if (newSize > buf.capacity()) {
+			int capacity = Math.max(newSize, buf.capacity() + (buf.capacity() >> 1));
+			buf.reserve(Math.min(capacity, Integer.MAX_VALUE - 8));
+		}
+		if (newSize > size) {
+			buf.fill(size, newSize, 0);
 		}
+		size = newSize;
 	}
 	
 	public int remove(int index) {
 		int old = get(index);
 		if (index < size - 1) {
-			System.arraycopy(buf, index + 1, buf, index, size - index - 1);
+			buf.copy(index + 1, index, size - index - 1);
 		}
 		size--;
 		return old;
 	}
 	
 	public void clear() {
-		buf = EMPTY;
+		buf.release();
 		size = 0;
 	}
 	
@@ -107,7 +117,9 @@ public class IntList {
 	}
 	
 	public int[] toArray() {
-		return Arrays.copyOf(buf, size);
+		int[] array = new int[size];
+		buf.get(0, array, 0, size);
+		return array;
 	}
 	
 	public String toHexString() {
@@ -115,7 +127,7 @@ public class IntList {
 		
 		StringBuilder sb = new StringBuilder();
 		for (int i = 0; i < size; i++) {
-			int value = buf[i];
+			int value = buf.get(i);
 			sb.append(hex.charAt((value >> 12) & 0xF));
 			sb.append(hex.charAt((value >> 8) & 0xF));
 			sb.append(hex.charAt((value >> 4) & 0xF));
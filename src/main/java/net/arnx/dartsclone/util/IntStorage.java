@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone.util;
+
+public interface IntStorage {
+	int get(int index);
+	
+	void set(int index, int value);
+	
+	int capacity();
+	
+	void reserve(int capacity);
+	
+	void release();
+	
+	default void fill(int fromIndex, int toIndex, int value) {
+		for (int i = fromIndex; i < toIndex; i++) {
+			set(i, value);
+		}
+	}
+	
+	default void copy(int srcIndex, int destIndex, int length) {
+		if (srcIndex < destIndex) {
+			for (int i = length - 1; i >= 0; i--) {
+				set(destIndex + i, get(srcIndex + i));
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				set(destIndex + i, get(srcIndex + i));
+			}
+		}
+	}
+	
+	default void get(int index, int[] dest, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			dest[offset + i] = get(index + i);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+public class OffHeapIntStorage implements IntStorage {
+	private static final int CHUNK_SHIFT = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final IntBuffer[] EMPTY = new IntBuffer[0];
+	
+	private IntBuffer[] chunks = EMPTY;
+	private int numChunks;
+	
+	@Override
+	public int get(int index) {
+		return chunks[index >>> CHUNK_SHIFT].get(index & CHUNK_MASK);
+	}
+	
+	@Override
+	public void set(int index, int value) {
+		chunks[index >>> CHUNK_SHIFT].put(index & CHUNK_MASK, value);
+	}
+	
+	@Override
+	public int capacity() {
+		return (int)Math.min((long)numChunks << CHUNK_SHIFT, Integer.MAX_VALUE);
+	}
+	
+	@Override
+	public void reserve(int capacity) {
+		int newChunks = (int)(((long)capacity + CHUNK_MASK) >>> CHUNK_SHIFT);
+		if (newChunks <= numChunks) {
+			return;
+		}
+		
+		// Growth only appends zeroed chunks, so existing data is never copied.
+		if (newChunks > chunks.length) {
+			chunks = Arrays.copyOf(chunks, Math.max(newChunks, chunks.length + (chunks.length >> 1)));
+		}
+		for (; numChunks < newChunks; numChunks++) {
+			chunks[numChunks] = ByteBuffer.allocateDirect(CHUNK_SIZE * 4)
+					.order(ByteOrder.nativeOrder())
+					.asIntBuffer();
+		}
+	}
+	
+	@Override
+	public void release() {
+		chunks = EMPTY;
+		numChunks = 0;
+	}
+}
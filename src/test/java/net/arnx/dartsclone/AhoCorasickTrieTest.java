@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class AhoCorasickTrieTest {
+
+	@Test
+	void test() throws IOException {
+		AhoCorasickTrie.Builder acb = new AhoCorasickTrie.Builder();
+		acb.put("he", 1);
+		acb.put("she", 2);
+		acb.put("his", 3);
+		acb.put("hers", 4);
+		AhoCorasickTrie ac = acb.build();
+		
+		List<String> results = new ArrayList<>();
+		ac.scan("ushers", (begin, end, value) -> results.add(begin + "-" + end + ":" + value));
+		assertEquals(Arrays.asList("1-4:2", "2-4:1", "2-6:4"), results);
+		
+		results.clear();
+		byte[] data = "ahishers".getBytes(StandardCharsets.UTF_8);
+		ac.scan(data, 0, data.length, (begin, end, value) -> results.add(begin + "-" + end + ":" + value));
+		assertEquals(Arrays.asList("1-4:3", "3-6:2", "4-6:1", "4-8:4"), results);
+		
+		assertEquals(2, ac.trie().get("she"));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ac.writeTo(out);
+		AhoCorasickTrie ac2 = AhoCorasickTrie.load(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(ac, ac2);
+		
+		ByteBuffer buf = ByteBuffer.wrap(out.toByteArray());
+		assertEquals(ac, AhoCorasickTrie.load(buf));
+		assertFalse(buf.hasRemaining());
+		
+		// The failure, output and depth links are stored after the units.
+		assertEquals(4 + 16 * ac.trie().size(), out.size());
+		byte[] broken = Arrays.copyOf(out.toByteArray(), out.size() - 4);
+		assertThrows(IOException.class, () -> AhoCorasickTrie.load(new ByteArrayInputStream(broken)));
+		assertThrows(IOException.class, () -> AhoCorasickTrie.load(ByteBuffer.wrap(broken)));
+		
+		Path path = Files.createTempFile("dartsclone", ".ac");
+		try {
+			try (OutputStream fout = Files.newOutputStream(path)) {
+				ac.writeTo(fout);
+			}
+			AhoCorasickTrie mapped;
+			try (FileChannel channel = FileChannel.open(path)) {
+				mapped = AhoCorasickTrie.map(channel);
+			}
+			assertEquals(ac, mapped);
+			results.clear();
+			mapped.scan("ushers", (begin, end, value) -> results.add(begin + "-" + end + ":" + value));
+			assertEquals(Arrays.asList("1-4:2", "2-4:1", "2-6:4"), results);
+		} finally {
+			Files.delete(path);
+		}
+	}
+	
+	@Test
+	void testUnicode() {
+		AhoCorasickTrie.Builder acb = new AhoCorasickTrie.Builder();
+		acb.put("\u65E5\u672C", 1);
+		acb.put("\u672C", 2);
+		acb.put("\uD83D\uDE00\u672C", 3);
+		acb.put("a\0b", 4);
+		AhoCorasickTrie ac = acb.build();
+		
+		List<String> results = new ArrayList<>();
+		String text = "x\u65E5\u672C\uD83D\uDE00\u672Ca\0b";
+		ac.scan(text, (begin, end, value) -> results.add(begin + "-" + end + ":" + value));
+		assertEquals(Arrays.asList("1-3:1", "2-3:2", "3-6:3", "5-6:2", "6-9:4"), results);
+		
+		results.clear();
+		ac.scan(text, 4, text.length(), (begin, end, value) -> results.add(begin + "-" + end + ":" + value));
+		assertEquals(Arrays.asList("5-6:2", "6-9:4"), results);
+		
+		results.clear();
+		byte[] data = text.getBytes(StandardCharsets.UTF_8);
+		ac.scan(data, 0, data.length, (begin, end, value) -> results.add(begin + "-" + end + ":" + value));
+		assertEquals(Arrays.asList("1-7:1", "4-7:2", "7-14:3", "11-14:2", "14-17:4"), results);
+	}
+	
+	@Test
+	void testShared() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		dab.put("ab", 1);
+		dab.put("bb", 1);
+		assertThrows(IllegalArgumentException.class, () -> AhoCorasickTrie.wrap(dab.toArray()));
+	}
+	
+	@Test
+	void testMany() {
+		AhoCorasickTrie.Builder acb = new AhoCorasickTrie.Builder();
+		Map<String, Integer> keys = new LinkedHashMap<>();
+		Random random = new Random(31L);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			sb.setLength(0);
+			int length = random.nextInt(5) + 1;
+			for (int j = 0; j < length; j++) {
+				sb.append((char)('a' + random.nextInt(4)));
+			}
+			if (!keys.containsKey(sb.toString())) {
+				keys.put(sb.toString(), i);
+				acb.put(sb.toString(), i);
+			}
+		}
+		AhoCorasickTrie ac = acb.build();
+		
+		sb.setLength(0);
+		for (int i = 0; i < 5000; i++) {
+			sb.append((char)('a' + random.nextInt(5)));
+		}
+		String text = sb.toString();
+		
+		List<String> expected = new ArrayList<>();
+		for (int end = 1; end <= text.length(); end++) {
+			for (int begin = Math.max(0, end - 5); begin < end; begin++) {
+				Integer value = keys.get(text.substring(begin, end));
+				if (value != null) {
+					expected.add(begin + "-" + end + ":" + value);
+				}
+			}
+		}
+		
+		List<String> actual = new ArrayList<>();
+		ac.scan(text, (begin, end, value) -> actual.add(begin + "-" + end + ":" + value));
+		assertEquals(expected, actual);
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class DoubleArrayMapTest {
+	@Test
+	void test() throws IOException {
+		DoubleArrayMap.Builder dmb = new DoubleArrayMap.Builder();
+		dmb.put("ALGOL", bytes("1960"));
+		dmb.put("ANSI", new byte[0]);
+		dmb.put("ARCO", bytes("xARCOx"), 1, 4);
+		dmb.put("\u3042\u3044", bytes("unicode"));
+		DoubleArrayMap map = dmb.build();
+		
+		assertEquals(4, map.size());
+		assertEquals("1960", string(map.get("ALGOL")));
+		assertEquals("", string(map.get("ANSI")));
+		assertEquals("ARCO", string(map.get("ARCO")));
+		assertEquals("unicode", string(map.get("\u3042\u3044")));
+		assertEquals("ARCO", string(map.get("xARCOx", 1, 5)));
+		
+		byte[] key = "ALGOL".getBytes(StandardCharsets.UTF_8);
+		assertEquals("1960", string(map.get(key, 0, key.length)));
+		assertEquals("1960", string(map.get(ByteBuffer.wrap(key))));
+		
+		assertNull(map.get("ALGO"));
+		assertNull(map.get("B"));
+		
+		ByteBuffer payload = map.get("ALGOL");
+		assertThrows(ReadOnlyBufferException.class, () -> payload.put(0, (byte)0));
+		payload.get();
+		assertEquals("1960", string(map.get("ALGOL")));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		map.writeTo(out);
+		DoubleArrayMap loaded = DoubleArrayMap.load(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(map, loaded);
+		assertEquals("ARCO", string(loaded.get("ARCO")));
+		
+		Path path = Files.createTempFile("dartsclone", ".map");
+		try {
+			try (OutputStream fout = Files.newOutputStream(path)) {
+				map.writeTo(fout);
+			}
+			DoubleArrayMap mapped = DoubleArrayMap.open(path);
+			assertEquals(map, mapped);
+			assertEquals("unicode", string(mapped.get("\u3042\u3044")));
+		} finally {
+			Files.delete(path);
+		}
+		
+		byte[] broken = out.toByteArray();
+		assertThrows(IOException.class, () -> DoubleArrayMap.load(new ByteArrayInputStream(broken, 0, broken.length - 1)));
+	}
+	
+	@Test
+	void testByteOrder() throws IOException {
+		DoubleArrayMap.Builder dmb = new DoubleArrayMap.Builder();
+		dmb.put("A", new byte[] { 1, 2, 3, 4, 5 });
+		dmb.put("B", new byte[] { 0x78, 0x56, 0x34, 0x12 });
+		DoubleArrayMap map = dmb.build();
+		
+		assertEquals(0x05040302, map.get("A").getInt(1));
+		assertEquals(0x12345678, map.get("B").getInt());
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		map.writeTo(out);
+		DoubleArrayMap loaded = DoubleArrayMap.load(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(0x12345678, loaded.payload(1).getInt());
+	}
+	
+	@Test
+	void testMany() throws IOException {
+		DoubleArrayMap.Builder dmb = new DoubleArrayMap.Builder();
+		
+		Random random = new Random(41L);
+		List<String> list = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			String key = Integer.toString(random.nextInt(), 36);
+			dmb.put(key, bytes(key + ":" + i));
+			list.add(key);
+		}
+		DoubleArrayMap map = dmb.build();
+		
+		for (int i = 0; i < list.size(); i++) {
+			String key = list.get(i);
+			if (list.indexOf(key) == i) {
+				assertEquals(key + ":" + i, string(map.get(key)));
+			}
+		}
+	}
+	
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	private static String string(ByteBuffer value) {
+		byte[] bytes = new byte[value.remaining()];
+		value.duplicate().get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
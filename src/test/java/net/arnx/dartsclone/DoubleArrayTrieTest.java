@@ -17,19 +17,38 @@ package net.arnx.dartsclone;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 
+import net.arnx.dartsclone.util.OffHeapIntStorage;
+
 class DoubleArrayTrieTest {
 
 	@Test
@@ -87,6 +106,410 @@ class DoubleArrayTrieTest {
 		assertEquals(test1, index1);
 	}
 	
+	@Test
+	void testOpen() throws IOException {
+		DoubleArrayTrie da = DoubleArrayTrie.open(Paths.get("./data/test6.dat"));
+		assertEquals(1, da.get("ALGOL"));
+		assertEquals(2, da.get("ANSI"));
+		assertEquals(3, da.get("ARCO"));
+		assertEquals(4, da.get("ARPA"));
+		assertEquals(5, da.get("ARPANET"));
+		assertEquals(6, da.get("ASCII"));
+		assertEquals(-1, da.get("APPARE"));
+		
+		assertArrayEquals(new int[] { 4, 5 }, da.findByCommonPrefix("ARPANET").toArray());
+		
+		DoubleArrayTrie test6;
+		try (InputStream in = Files.newInputStream(Paths.get("./data/test6.dat"))) {
+			test6 = DoubleArrayTrie.load(in);
+		}
+		assertEquals(test6, da);
+	}
+	
+	@Test
+	void testChannel() throws IOException {
+		byte[] data = Files.readAllBytes(Paths.get("./data/test6.dat"));
+		
+		DoubleArrayTrie da1;
+		try (FileChannel channel = FileChannel.open(Paths.get("./data/test6.dat"))) {
+			da1 = DoubleArrayTrie.load(channel);
+		}
+		DoubleArrayTrie da2;
+		try (ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(data))) {
+			da2 = DoubleArrayTrie.load(channel);
+		}
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		DoubleArrayTrie da3 = DoubleArrayTrie.load(buf);
+		assertFalse(buf.hasRemaining());
+		
+		assertEquals(da1, da2);
+		assertEquals(da1, da3);
+		assertEquals(5, da1.get("ARPANET"));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (WritableByteChannel channel = Channels.newChannel(out)) {
+			da1.writeTo(channel);
+		}
+		assertArrayEquals(data, out.toByteArray());
+	}
+	
+	@Test
+	void testCharSequence() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		dab.put("A", 1);
+		dab.put("A\0B", 2);
+		dab.put("\u65E5\u672C", 3);
+		dab.put("\u65E5\u672C\u8A9E", 4);
+		dab.put("\uD83D\uDE00", 5);
+		dab.put("\uD83D", 6);
+		DoubleArrayTrie da = dab.build();
+		
+		StringBuilder sb = new StringBuilder("xxA\0B\u65E5\u672C\u8A9E\uD83D\uDE00");
+		assertEquals(1, da.get(sb, 2, 3));
+		assertEquals(2, da.get(sb, 2, 5));
+		assertEquals(-1, da.get(sb, 2, 4));
+		assertEquals(3, da.get(sb, 5, 7));
+		assertEquals(4, da.get(sb, 5, 8));
+		assertEquals(5, da.get(sb, 8, 10));
+		assertEquals(6, da.get(sb, 8, 9));
+		assertEquals(-1, da.get(sb, 0, 0));
+		assertEquals(-1, da.get(sb, 0, sb.length()));
+		
+		assertArrayEquals(new int[] { 1, 2 }, da.findByCommonPrefix(sb, 2, sb.length()).toArray());
+		assertArrayEquals(new int[] { 3, 4 }, da.findByCommonPrefix(sb, 5, sb.length()).toArray());
+		assertArrayEquals(new int[] { 5 }, da.findByCommonPrefix(sb, 8, 10).toArray());
+		assertArrayEquals(new int[] { 6 }, da.findByCommonPrefix(sb, 8, 9).toArray());
+		
+		assertThrows(IndexOutOfBoundsException.class, () -> da.get(sb, 3, 2));
+		assertThrows(IndexOutOfBoundsException.class, () -> da.get(sb, 0, sb.length() + 1));
+	}
+	
+	@Test
+	void testBytes() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		dab.put("A", 1);
+		dab.put("A\0B", 2);
+		dab.put("\u65E5\u672C", 3);
+		dab.put("\u65E5\u672C\u8A9E", 4);
+		DoubleArrayTrie da = dab.build();
+		
+		byte[] data = "xxA\0B\u65E5\u672C\u8A9E".getBytes(StandardCharsets.UTF_8);
+		assertEquals(1, da.get(data, 2, 1));
+		assertEquals(2, da.get(data, 2, 3));
+		assertEquals(-1, da.get(data, 2, 2));
+		assertEquals(3, da.get(data, 5, 6));
+		assertEquals(4, da.get(data, 5, 9));
+		assertEquals(-1, da.get(data, 5, 5));
+		assertArrayEquals(new int[] { 1, 2 }, da.findByCommonPrefix(data, 2, data.length - 2).toArray());
+		assertArrayEquals(new int[] { 3, 4 }, da.findByCommonPrefix(data, 5, data.length - 5).toArray());
+		assertThrows(IndexOutOfBoundsException.class, () -> da.get(data, 2, data.length));
+		
+		ByteBuffer buf = ByteBuffer.allocateDirect(data.length);
+		buf.put(data);
+		buf.position(2);
+		buf.limit(5);
+		assertEquals(2, da.get(buf));
+		assertEquals(2, buf.position());
+		buf.limit(data.length);
+		assertArrayEquals(new int[] { 1, 2 }, da.findByCommonPrefix(buf).toArray());
+		buf.position(5);
+		assertEquals(4, da.get(buf));
+		assertArrayEquals(new int[] { 3, 4 }, da.findByCommonPrefix(buf).toArray());
+	}
+	
+	@Test
+	void testGetAll() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		List<String> keys = new ArrayList<>();
+		Random random = new Random(1L);
+		for (int i = 0; i < 1000; i++) {
+			String key = Integer.toString(random.nextInt(), 36) + (i % 3 == 0 ? "\u65E5\0\uD842\uDFB7" : "");
+			keys.add(key);
+			dab.put(key, i);
+		}
+		DoubleArrayTrie dat = dab.build();
+		
+		List<String> queries = new ArrayList<>();
+		for (int i = 0; i < keys.size(); i++) {
+			queries.add(keys.get(random.nextInt(keys.size())));
+			queries.add(keys.get(i).substring(0, keys.get(i).length() - 1));
+			queries.add(keys.get(i) + "x");
+		}
+		queries.add("");
+		
+		String[] array = queries.toArray(new String[queries.size()]);
+		int[] out = new int[array.length];
+		dat.getAll(array, out);
+		for (int i = 0; i < array.length; i++) {
+			assertEquals(dat.get(array[i]), out[i], array[i]);
+		}
+		
+		ByteArrayOutputStream concat = new ByteArrayOutputStream();
+		int[] offsets = new int[array.length + 1];
+		for (int i = 0; i < array.length; i++) {
+			byte[] bytes = array[i].getBytes(StandardCharsets.UTF_8);
+			concat.write(bytes, 0, bytes.length);
+			offsets[i + 1] = concat.size();
+		}
+		byte[] data = concat.toByteArray();
+		Arrays.fill(out, -2);
+		dat.getAll(data, offsets, out);
+		for (int i = 0; i < array.length; i++) {
+			assertEquals(dat.get(data, offsets[i], offsets[i + 1] - offsets[i]), out[i], array[i]);
+		}
+		
+		dat.getAll(new String[0], new int[0]);
+		assertThrows(IndexOutOfBoundsException.class, () -> dat.getAll(array, new int[1]));
+		assertThrows(IndexOutOfBoundsException.class, () -> dat.getAll(data, new int[] { 0, data.length + 1 }, new int[1]));
+	}
+	
+	@Test
+	void testLookupAll() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		for (int i = 0; i < 10000; i++) {
+			dab.put("key" + i, i);
+		}
+		DoubleArrayTrie dat = dab.build();
+		
+		List<String> queries = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			queries.add("key" + (i * 7 % 20000));
+		}
+		int[] expected = queries.stream().mapToInt(dat::get).toArray();
+		
+		int[] out = new int[queries.size()];
+		dat.lookupAll(queries, out);
+		assertArrayEquals(expected, out);
+		
+		Arrays.fill(out, -2);
+		dat.lookupAll(new LinkedList<>(queries), out);
+		assertArrayEquals(expected, out);
+		
+		assertArrayEquals(expected, dat.lookupAll(queries.stream()).toArray());
+		assertArrayEquals(expected, dat.lookupAll(queries.parallelStream()).toArray());
+		assertEquals(queries.size(), dat.lookupAll(queries.stream()).count());
+		assertEquals(0, dat.lookupAll(Stream.<String>empty()).count());
+		assertThrows(IndexOutOfBoundsException.class, () -> dat.lookupAll(queries, new int[1]));
+	}
+	
+	@Test
+	void testCommonPrefixSearch() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		dab.put("\uD83D\uDE00", 1);
+		dab.put("\uD83D\uDE00\u65E5", 2);
+		dab.put("\uD83D\uDE00\u65E5\u672Cx", 3);
+		DoubleArrayTrie da = dab.build();
+		
+		String text = "\uD83D\uDE00\u65E5\u672Cxy";
+		int[] values = new int[4];
+		int[] lengths = new int[4];
+		assertEquals(3, da.commonPrefixSearch(text, values, lengths, values.length));
+		assertArrayEquals(new int[] { 1, 2, 3, 0 }, values);
+		assertArrayEquals(new int[] { 2, 3, 5, 0 }, lengths);
+		
+		Arrays.fill(values, 0);
+		assertEquals(3, da.commonPrefixSearch(text, 0, text.length(), values, null, 2));
+		assertArrayEquals(new int[] { 1, 2, 0, 0 }, values);
+		
+		byte[] data = text.getBytes(StandardCharsets.UTF_8);
+		assertEquals(3, da.commonPrefixSearch(data, 0, data.length, values, lengths, values.length));
+		assertArrayEquals(new int[] { 1, 2, 3 }, Arrays.copyOf(values, 3));
+		assertArrayEquals(new int[] { 4, 7, 11 }, Arrays.copyOf(lengths, 3));
+		
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		assertEquals(3, da.commonPrefixSearch(buf, values, lengths, 1));
+		assertEquals(1, values[0]);
+		assertEquals(4, lengths[0]);
+		
+		List<String> results = new ArrayList<>();
+		da.commonPrefixSearch(text, 2, text.length(), (value, length) -> results.add(value + ":" + length));
+		assertEquals(Arrays.asList(), results);
+		da.commonPrefixSearch(text, (value, length) -> results.add(value + ":" + length));
+		assertEquals(Arrays.asList("1:2", "2:3", "3:5"), results);
+		results.clear();
+		da.commonPrefixSearch(data, 0, data.length, (value, length) -> results.add(value + ":" + length));
+		assertEquals(Arrays.asList("1:4", "2:7", "3:11"), results);
+		results.clear();
+		da.commonPrefixSearch(buf, (value, length) -> results.add(value + ":" + length));
+		assertEquals(Arrays.asList("1:4", "2:7", "3:11"), results);
+	}
+	
+	@Test
+	void testBuildLattice() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		dab.put("\u6771", 1);
+		dab.put("\u6771\u4EAC", 2);
+		dab.put("\u4EAC", 3);
+		dab.put("\u4EAC\u90FD", 4);
+		dab.put("\u90FD", 5);
+		dab.put("\uD842\uDFB7", 6);
+		DoubleArrayTrie da = dab.build();
+		
+		Lattice lattice = new Lattice(1);
+		da.buildLattice("\u6771\u4EAC\u90FD\uD842\uDFB7", lattice);
+		assertEquals("[0-1:1, 0-2:2, 1-2:3, 1-3:4, 2-3:5, 3-5:6]", lattice.toString());
+		assertEquals(6, lattice.size());
+		assertEquals(1, lattice.begin(3));
+		assertEquals(3, lattice.end(3));
+		assertEquals(4, lattice.value(3));
+		
+		lattice.clear();
+		assertTrue(lattice.isEmpty());
+		da.buildLattice("x\u4EAC\u90FDx", 1, 3, lattice);
+		assertEquals("[1-2:3, 1-3:4, 2-3:5]", lattice.toString());
+		assertThrows(ArrayIndexOutOfBoundsException.class, () -> lattice.begin(3));
+	}
+	
+	@Test
+	void testTraverse() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		dab.put("ALGOL", 1);
+		dab.put("ARPA", 4);
+		dab.put("ARPANET", 5);
+		dab.put("\u65E5\u672C", 6);
+		DoubleArrayTrie da = dab.build();
+		
+		int[] nodePos = new int[1];
+		int[] keyPos = new int[1];
+		String text = "ARPANETS";
+		int[] expected = { -1, -1, -1, 4, -1, -1, 5, -2 };
+		for (int i = 0; i < text.length(); i++) {
+			assertEquals(expected[i], da.traverse(text, nodePos, keyPos, i + 1), "i == " + i);
+		}
+		assertEquals(7, keyPos[0]);
+		
+		int[] nodePos2 = new int[1];
+		int[] keyPos2 = new int[1];
+		assertEquals(-2, da.traverse("AX", nodePos2, keyPos2, 2));
+		assertEquals(1, keyPos2[0]);
+		assertEquals(-1, da.traverse("AL", nodePos2, new int[] { 0 }, 0));
+		
+		keyPos2[0] = 1;
+		assertEquals(-1, da.traverse("ALG", nodePos2, keyPos2, 3));
+		keyPos2[0] = 0;
+		assertEquals(1, da.traverse("OL", nodePos2, keyPos2, 2));
+		
+		DoubleArrayTrie.Builder dab2 = new DoubleArrayTrie.Builder();
+		dab2.put("x\uD842\uDFB7", 7);
+		dab2.put("x\uD842\uDFB7y", 8);
+		DoubleArrayTrie da2 = dab2.build();
+		String text2 = "x\uD842\uDFB7y";
+		int[] nodePos4 = new int[1];
+		int[] keyPos4 = new int[1];
+		int[] expected2 = { -1, -1, 7, 8 };
+		for (int i = 0; i < text2.length(); i++) {
+			assertEquals(expected2[i], da2.traverse(text2, nodePos4, keyPos4, i + 1), "i == " + i);
+		}
+		assertEquals(text2.length(), keyPos4[0]);
+		
+		DoubleArrayTrie.Builder dab3 = new DoubleArrayTrie.Builder();
+		dab3.put("x", 7);
+		dab3.put("x\uD83D\uDE00", 9);
+		DoubleArrayTrie da3 = dab3.build();
+		int[] nodePos5 = new int[1];
+		int[] keyPos5 = new int[1];
+		assertEquals(7, da3.traverse("x\uD83D", nodePos5, keyPos5, 2));
+		assertEquals(1, keyPos5[0]);
+		assertEquals(9, da3.traverse("x\uD83D\uDE00", nodePos5, keyPos5, 3));
+		assertEquals(3, keyPos5[0]);
+		
+		byte[] data = "\u65E5\u672C".getBytes(StandardCharsets.UTF_8);
+		int[] nodePos3 = new int[1];
+		int[] keyPos3 = new int[1];
+		assertEquals(-1, da.traverse(data, nodePos3, keyPos3, 3));
+		assertEquals(6, da.traverse(data, nodePos3, keyPos3, data.length));
+		assertEquals(data.length, keyPos3[0]);
+	}
+	
+	@Test
+	void testPredictiveSearch() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		dab.put("ALGOL", 1);
+		dab.put("ANSI", 2);
+		dab.put("ARCO", 3);
+		dab.put("ARPA", 4);
+		dab.put("ARPANET", 5);
+		dab.put("ASCII", 6);
+		dab.put("A\0", 7);
+		DoubleArrayTrie da = dab.build();
+		
+		assertArrayEquals(new int[] { 1, 2, 3, 4, 5, 6, 7 }, da.predictiveSearch("A").toArray());
+		assertArrayEquals(new int[] { 3, 4, 5 }, da.predictiveSearch("AR").toArray());
+		assertArrayEquals(new int[] { 4, 5 }, da.predictiveSearch("ARPA").toArray());
+		assertArrayEquals(new int[] { }, da.predictiveSearch("B").toArray());
+		assertArrayEquals(new int[] { 7 }, da.predictiveSearch("A\0").toArray());
+		
+		int[] values = new int[3];
+		assertEquals(2, da.predictiveSearch("ARP", values, values.length));
+		assertArrayEquals(new int[] { 4, 5, 0 }, values);
+		assertEquals(2, da.predictiveSearch("ARX".getBytes(StandardCharsets.UTF_8), 0, 2, values, 2));
+		assertArrayEquals(new int[] { 3, 4, 0 }, values);
+		assertEquals(0, da.predictiveSearch("A", values, 0));
+		
+		List<String> keys = new ArrayList<>();
+		da.predictiveSearch("AR", (key, length, value) -> {
+			keys.add(new String(key, 0, length, StandardCharsets.UTF_8) + ":" + value);
+			return true;
+		});
+		assertEquals(Arrays.asList("ARCO:3", "ARPA:4", "ARPANET:5"), keys);
+		
+		keys.clear();
+		da.predictiveSearch(new byte[] { 'A', 0 }, 0, 2, (key, length, value) -> {
+			keys.add(Arrays.toString(Arrays.copyOf(key, length)) + ":" + value);
+			return true;
+		});
+		assertEquals(Arrays.asList("[65, -64, -128]:7"), keys);
+		
+		// a small cursor grows on the first search and is reused by the next ones
+		PredictiveCursor cursor = new PredictiveCursor(1);
+		for (String prefix : new String[] { "AR", "ARPA", "A\0", "B" }) {
+			List<Integer> found = new ArrayList<>();
+			da.predictiveSearch(prefix, 0, prefix.length(), cursor, (key, length, value) -> found.add(value));
+			assertEquals(da.predictiveSearch(prefix).boxed().collect(Collectors.toList()), found);
+		}
+		keys.clear();
+		da.predictiveSearch("ARPANET".getBytes(StandardCharsets.UTF_8), 0, 4, cursor, (key, length, value) -> {
+			keys.add(new String(key, 0, length, StandardCharsets.UTF_8) + ":" + value);
+			return value < 4;
+		});
+		assertEquals(Arrays.asList("ARPA:4"), keys);
+	}
+	
+	@Test
+	void testPredictiveSearchShared() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		TreeMap<String, Integer> expected = new TreeMap<>();
+		Random random = new Random(17L);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			sb.setLength(0);
+			int length = random.nextInt(12) + 1;
+			for (int j = 0; j < length; j++) {
+				sb.append((char)('a' + random.nextInt(4)));
+			}
+			String key = sb.toString();
+			if (!expected.containsKey(key)) {
+				expected.put(key, key.length());
+				dab.put(key, key.length());
+			}
+		}
+		dab.put("zzz", Integer.MAX_VALUE);
+		DoubleArrayTrie da = dab.build();
+		for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+			assertEquals(entry.getValue().intValue(), da.get(entry.getKey()), entry.getKey());
+		}
+		assertEquals(Integer.MAX_VALUE, da.get("zzz"));
+		expected.put("zzz", Integer.MAX_VALUE);
+		
+		TreeMap<String, Integer> actual = new TreeMap<>();
+		da.predictiveSearch("", (key, length, value) -> {
+			actual.put(new String(key, 0, length, StandardCharsets.UTF_8), value);
+			return true;
+		});
+		assertEquals(expected, actual);
+		assertEquals(expected.subMap("ab", "ac").size(), da.predictiveSearch("ab").count());
+	}
+	
 	@Test
 	void testMany() throws IOException {
 		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
@@ -121,4 +544,239 @@ class DoubleArrayTrieTest {
 			assertEquals(value, i, key + " is invalid: " + value + " != " + i);
 		}
 	}
+	
+	@Test
+	void testDuplicateKeys() throws IOException {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		for (int i = 0; i < 1000; i++) {
+			dab.put("key" + (i % 10), i);
+			dab.put("key", 1000 + i);
+		}
+		DoubleArrayTrie dat = dab.build();
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i, dat.get("key" + i));
+		}
+		assertEquals(1000, dat.get("key"));
+	}
+	
+	@Test
+	void testSortedBuilder() throws IOException {
+		DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+		DoubleArrayTrie.SortedBuilder sorted = new DoubleArrayTrie.SortedBuilder();
+		
+		Random random = new Random(29L);
+		Set<String> keys = new TreeSet<>();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			sb.setLength(0);
+			int length = random.nextInt(8) + 1;
+			for (int j = 0; j < length; j++) {
+				sb.append((char)('a' + random.nextInt(26)));
+			}
+			keys.add(sb.toString());
+		}
+		int value = 0;
+		for (String key : keys) {
+			builder.put(key, value);
+			sorted.put(key, value);
+			value++;
+		}
+		assertEquals(builder.build(), sorted.build());
+		assertThrows(IllegalStateException.class, () -> sorted.put("zzz", 0));
+		
+		DoubleArrayTrie.SortedBuilder wrong = new DoubleArrayTrie.SortedBuilder().put("b", 0);
+		assertThrows(IllegalStateException.class, () -> wrong.put("a", 1));
+		assertThrows(IllegalArgumentException.class, () -> wrong.put("", 1));
+	}
+	
+	@Test
+	void testOffHeapStorage() throws IOException {
+		DoubleArrayTrie.Builder heap = new DoubleArrayTrie.Builder();
+		DoubleArrayTrie.Builder offHeap = new DoubleArrayTrie.Builder().storage(OffHeapIntStorage::new);
+		DoubleArrayTrie.Builder parallel = new DoubleArrayTrie.Builder().storage(OffHeapIntStorage::new).parallel(true);
+		
+		Random random = new Random(37L);
+		List<String> list = new ArrayList<>();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 50000; i++) {
+			sb.setLength(0);
+			int length = random.nextInt(10) + 1;
+			for (int j = 0; j < length; j++) {
+				sb.append((char)(random.nextInt(0x800) + 1));
+			}
+			heap.put(sb.toString(), i);
+			offHeap.put(sb.toString(), i);
+			parallel.put(sb.toString(), i);
+			list.add(sb.toString());
+		}
+		
+		DoubleArrayTrie expected = heap.build();
+		assertEquals(expected, offHeap.build());
+		
+		DoubleArrayTrie actual = parallel.build();
+		for (String key : list) {
+			assertEquals(expected.get(key), actual.get(key), key);
+		}
+	}
+	
+	@Test
+	void testBuildListener() throws IOException {
+		for (boolean parallel : new boolean[] { false, true }) {
+			DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder().parallel(parallel);
+			Random random = new Random(47L);
+			for (int i = 0; i < 200000; i++) {
+				dab.put(Integer.toString(random.nextInt(), 36), i);
+			}
+			
+			List<String> events = new ArrayList<>();
+			Map<BuildListener.Phase, Long> progress = new TreeMap<>();
+			int[] stats = new int[4];
+			DoubleArrayTrie dat = dab.listener(new BuildListener() {
+				@Override
+				public void onPhaseStart(Phase phase) {
+					events.add("start:" + phase);
+				}
+				
+				@Override
+				public synchronized void onProgress(Phase phase, long done, long total) {
+					progress.merge(phase, done, Math::max);
+				}
+				
+				@Override
+				public void onPhaseEnd(Phase phase, long nanos) {
+					assertTrue(nanos >= 0);
+					events.add("end:" + phase);
+				}
+				
+				@Override
+				public void onDawg(int units, int intersections, int tableExpansions) {
+					stats[0] = units;
+					stats[1] = tableExpansions;
+				}
+				
+				@Override
+				public void onComplete(int keys, int units) {
+					stats[2] = keys;
+					stats[3] = units;
+				}
+			}).build();
+			
+			assertEquals(Arrays.asList(
+					"start:SORT", "end:SORT", 
+					"start:INSERT", "end:INSERT", 
+					"start:FINISH", "end:FINISH", 
+					"start:ARRANGE", "end:ARRANGE"), events);
+			assertEquals(200000L, progress.get(BuildListener.Phase.INSERT));
+			assertTrue(progress.get(BuildListener.Phase.ARRANGE) > 0);
+			assertTrue(stats[0] > 0);
+			assertTrue(stats[1] > 0);
+			assertEquals(200000, stats[2]);
+			assertEquals(dat.size(), stats[3]);
+		}
+		
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		for (int i = 0; i < 200000; i++) {
+			dab.put(Integer.toString(i, 36), i);
+		}
+		dab.listener(new BuildListener() {
+			@Override
+			public boolean isCancelled() {
+				return true;
+			}
+		});
+		assertThrows(CancellationException.class, () -> dab.build());
+		
+		long[] arranged = new long[1];
+		dab.listener(new BuildListener() {
+			@Override
+			public void onProgress(Phase phase, long done, long total) {
+				if (phase == Phase.ARRANGE) {
+					arranged[0] = done;
+				}
+			}
+			
+			@Override
+			public boolean isCancelled() {
+				return arranged[0] > 0;
+			}
+		});
+		assertThrows(CancellationException.class, () -> dab.build());
+	}
+	
+	@Test
+	void testParallel() throws IOException {
+		DoubleArrayTrie.Builder serial = new DoubleArrayTrie.Builder();
+		DoubleArrayTrie.Builder parallel = new DoubleArrayTrie.Builder().parallel(true);
+		
+		Random random = new Random(17L);
+		String[] suffixes = { "", "ing", "ed", "s", "\u3042\u3044" };
+		List<String> list = new ArrayList<>();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			sb.setLength(0);
+			int length = random.nextInt(6) + 1;
+			for (int j = 0; j < length; j++) {
+				sb.append((char)(random.nextInt(0x3000) + 1));
+			}
+			sb.append(suffixes[random.nextInt(suffixes.length)]);
+			String key = sb.toString();
+			
+			serial.put(key, i);
+			parallel.put(key, i);
+			list.add(key);
+		}
+		
+		DoubleArrayTrie expected = serial.build();
+		DoubleArrayTrie actual = parallel.build();
+		for (String key : list) {
+			assertEquals(expected.get(key), actual.get(key), key);
+			assertEquals(
+					expected.predictiveSearch(key).boxed().collect(Collectors.toList()), 
+					actual.predictiveSearch(key).boxed().collect(Collectors.toList()), key);
+		}
+		assertEquals(-1, actual.get("\uFFFF"));
+		
+		assertEquals(-1, new DoubleArrayTrie.Builder().parallel(true).build().get("a"));
+	}
+	
+	@Test
+	void testExternalBuilder() throws IOException {
+		Path dir = Files.createTempDirectory("dartsclone");
+		try {
+			DoubleArrayTrie.Builder builder = new DoubleArrayTrie.Builder();
+			DoubleArrayTrie actual;
+			try (DoubleArrayTrie.ExternalBuilder external = new DoubleArrayTrie.ExternalBuilder(dir, 4096)) {
+				Random random = new Random(23L);
+				StringBuilder sb = new StringBuilder();
+				for (int i = 0; i < 10000; i++) {
+					sb.setLength(0);
+					int length = random.nextInt(4) + 1;
+					for (int j = 0; j < length; j++) {
+						sb.append((char)(random.nextInt(0x100)));
+					}
+					builder.put(sb.toString(), i);
+					external.put(sb.toString(), i);
+				}
+				assertTrue(countFiles(dir) > 1);
+				
+				actual = external.build();
+			}
+			assertEquals(0, countFiles(dir));
+			assertEquals(builder.build(), actual);
+		} finally {
+			Files.delete(dir);
+		}
+		
+		try (DoubleArrayTrie.ExternalBuilder external = new DoubleArrayTrie.ExternalBuilder()) {
+			DoubleArrayTrie dat = external.put("a", 1).put("b", 2).put("a", 3).build();
+			assertEquals(1, dat.get("a"));
+			assertEquals(2, dat.get("b"));
+		}
+	}
+	
+	private static long countFiles(Path dir) throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.count();
+		}
+	}
 }
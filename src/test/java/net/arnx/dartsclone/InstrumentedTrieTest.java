@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+class InstrumentedTrieTest {
+	@Test
+	void test() throws IOException {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		dab.put("ALGOL", 1);
+		dab.put("ANSI", 2);
+		dab.put("ARCO", 3);
+		dab.put("ARPA", 4);
+		dab.put("ARPANET", 5);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		dab.build().writeTo(out);
+		
+		LookupMetrics metrics = new LookupMetrics();
+		InstrumentedTrie trie = InstrumentedTrie.load(new ByteArrayInputStream(out.toByteArray()), metrics);
+		assertEquals(1, metrics.loads());
+		assertEquals(trie.size(), metrics.loadUnits());
+		
+		assertEquals(1, trie.get("ALGOL"));
+		assertEquals(-1, trie.get("ARP"));
+		assertEquals(-1, trie.get("ARX"));
+		byte[] key = "ARPANET".getBytes(StandardCharsets.UTF_8);
+		assertEquals(5, trie.get(key, 0, key.length));
+		
+		assertEquals(4, metrics.lookups());
+		assertEquals(2, metrics.hits());
+		assertEquals(2, metrics.misses());
+		assertEquals(1, metrics.deadEnds());
+		assertEquals(1, metrics.depthCount(5));
+		assertEquals(1, metrics.missDepthCount(3));
+		assertEquals(1, metrics.missDepthCount(2));
+		assertEquals(1, metrics.depthCount(7));
+		
+		assertEquals("4,5", trie.findByCommonPrefix("ARPANETS").mapToObj(Integer::toString).collect(Collectors.joining(",")));
+		int[] values = new int[1];
+		assertEquals(2, trie.commonPrefixSearch("ARPANET", values, null, values.length));
+		assertEquals(2, metrics.prefixSearches());
+		assertEquals(4, metrics.prefixResults());
+		
+		metrics.reset();
+		assertEquals(0, metrics.lookups());
+		assertEquals(0, metrics.depthCount(5));
+	}
+	
+	@Test
+	void testSameAsTrie() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		dab.put("x", 1);
+		dab.put("x\uD83D\uDE00", 2);
+		dab.put("\u0000", 3);
+		dab.put("a\u0000b", 4);
+		dab.put("\uD83D", 6);
+		dab.put("\uDE00x", 7);
+		DoubleArrayTrie dat = dab.build();
+		LookupMetrics metrics = new LookupMetrics();
+		InstrumentedTrie trie = new InstrumentedTrie(dat, metrics);
+		
+		String[] keys = { "", "x", "x\uD83D", "x\uD83D\uDE00", "x\uDE00", "\uD83D", "\uD83D\uDE00", "\uDE00x",
+				"\u0000", "a\u0000", "a\u0000b", "\uD83Dx", "\uFFFF", "\uDBFF\uDFFF" };
+		for (String key : keys) {
+			assertEquals(dat.get(key), trie.get(key), key);
+			byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+			assertEquals(dat.get(bytes, 0, bytes.length), trie.get(bytes, 0, bytes.length), key);
+		}
+		assertEquals(keys.length * 2, metrics.lookups());
+		assertEquals(6, trie.get("\uD83D"));
+	}
+}
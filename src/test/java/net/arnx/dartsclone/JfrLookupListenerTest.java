@@ -0,0 +1,32 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class JfrLookupListenerTest {
+	@Test
+	void test() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		dab.put("ALGOL", 1);
+		InstrumentedTrie trie = new InstrumentedTrie(dab.build(), new JfrLookupListener());
+		assertEquals(1, trie.get("ALGOL"));
+		assertEquals(-1, trie.get("ANSI"));
+		assertEquals(1, trie.findByCommonPrefix("ALGOL").count());
+	}
+}
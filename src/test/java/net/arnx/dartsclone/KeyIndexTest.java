@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class KeyIndexTest {
+	@Test
+	void test() throws IOException {
+		KeyIndex.Builder kib = new KeyIndex.Builder();
+		kib.put("ALGOL", 1);
+		kib.put("ANSI", 2);
+		kib.put("ARCO", 3);
+		kib.put("ARPA", 4);
+		kib.put("ARPANET", 5);
+		kib.put("A\0", 6);
+		kib.put("\u3042\uD842\uDFB7", 7);
+		KeyIndex index = kib.build();
+		
+		assertEquals("ALGOL", index.keyOf(1));
+		assertEquals("ANSI", index.keyOf(2));
+		assertEquals("ARCO", index.keyOf(3));
+		assertEquals("ARPA", index.keyOf(4));
+		assertEquals("ARPANET", index.keyOf(5));
+		assertEquals("A\0", index.keyOf(6));
+		assertEquals("\u3042\uD842\uDFB7", index.keyOf(7));
+		assertNull(index.keyOf(8));
+		assertNull(index.keyOf(-1));
+		
+		int[] nodePos = new int[1];
+		int[] keyPos = new int[1];
+		assertEquals(4, index.trie().traverse("ARPA", nodePos, keyPos, 4));
+		assertEquals(nodePos[0], index.nodeOf(4));
+		assertEquals("ARPA", index.keyAt(nodePos[0]));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		index.writeTo(out);
+		KeyIndex loaded = KeyIndex.load(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(index, loaded);
+		assertEquals("ARPANET", loaded.keyOf(5));
+		assertEquals(5, loaded.get("ARPANET"));
+		
+		Path path = Files.createTempFile("dartsclone", ".idx");
+		try {
+			try (OutputStream fout = Files.newOutputStream(path)) {
+				index.writeTo(fout);
+			}
+			KeyIndex mapped = KeyIndex.open(path);
+			assertEquals(index, mapped);
+			assertEquals("\u3042\uD842\uDFB7", mapped.keyOf(7));
+		} finally {
+			Files.delete(path);
+		}
+	}
+	
+	@Test
+	void testMany() throws IOException {
+		KeyIndex.Builder kib = new KeyIndex.Builder();
+		
+		Random random = new Random(43L);
+		List<String> list = new ArrayList<>();
+		Set<String> check = new HashSet<>();
+		StringBuilder sb = new StringBuilder();
+		while (list.size() < 50000) {
+			sb.setLength(0);
+			int length = random.nextInt(8) + 1;
+			for (int j = 0; j < length; j++) {
+				sb.append((char)(random.nextInt(0x3000)));
+			}
+			String key = sb.toString();
+			if (check.add(key)) {
+				kib.put(key, list.size());
+				list.add(key);
+			}
+		}
+		KeyIndex index = kib.build();
+		
+		for (int i = 0; i < list.size(); i++) {
+			assertEquals(list.get(i), index.keyOf(i));
+		}
+	}
+}
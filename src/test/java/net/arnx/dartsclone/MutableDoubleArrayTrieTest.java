@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class MutableDoubleArrayTrieTest {
+	@Test
+	void test() {
+		MutableDoubleArrayTrie mdat = new MutableDoubleArrayTrie();
+		assertEquals(-1, mdat.put("ALGOL", 1));
+		assertEquals(-1, mdat.put("ANSI", 2));
+		assertEquals(-1, mdat.put("ARCO", 3));
+		assertEquals(-1, mdat.put("ARPA", 4));
+		assertEquals(-1, mdat.put("ARPANET", 5));
+		assertEquals(-1, mdat.put("ASCII", 6));
+		assertEquals(6, mdat.put("ASCII", 7));
+		assertEquals(-1, mdat.put("A\0B", 8));
+		assertEquals(-1, mdat.put("\u65E5\u672C", 9));
+		assertEquals(-1, mdat.put("\u65E5\u672C\u8A9E\uD842\uDFB7", 10));
+		
+		assertEquals(9, mdat.size());
+		assertEquals(1, mdat.get("ALGOL"));
+		assertEquals(4, mdat.get("ARPA"));
+		assertEquals(5, mdat.get("ARPANET"));
+		assertEquals(7, mdat.get("ASCII"));
+		assertEquals(8, mdat.get("A\0B"));
+		assertEquals(8, mdat.get("A\0B".getBytes(StandardCharsets.UTF_8), 0, 3));
+		assertEquals(10, mdat.get("\u65E5\u672C\u8A9E\uD842\uDFB7"));
+		assertEquals(-1, mdat.get("A"));
+		assertEquals(-1, mdat.get("ARPAN"));
+		assertEquals(-1, mdat.get("\u65E5\u672C\u8A9E"));
+		
+		assertEquals(4, mdat.remove("ARPA"));
+		assertEquals(-1, mdat.remove("ARPA"));
+		assertEquals(-1, mdat.remove("ARP"));
+		assertEquals(-1, mdat.get("ARPA"));
+		assertEquals(5, mdat.get("ARPANET"));
+		assertEquals(5, mdat.remove("ARPANET"));
+		assertEquals(3, mdat.get("ARCO"));
+		assertEquals(7, mdat.size());
+		
+		DoubleArrayTrie dat = mdat.freeze();
+		assertEquals(mdat.unitSize(), dat.size());
+		assertEquals(1, dat.get("ALGOL"));
+		assertEquals(-1, dat.get("ARPANET"));
+		assertEquals(10, dat.get("\u65E5\u672C\u8A9E\uD842\uDFB7"));
+		assertArrayEquals(new int[] { 1, 2, 3, 7, 8 }, dat.predictiveSearch("A").sorted().toArray());
+		
+		assertThrows(IllegalArgumentException.class, () -> mdat.put("", 1));
+		assertThrows(IllegalArgumentException.class, () -> mdat.put("A", -1));
+	}
+	
+	@Test
+	void testRandom() {
+		Random random = new Random(3L);
+		MutableDoubleArrayTrie mdat = new MutableDoubleArrayTrie();
+		Map<String, Integer> map = new HashMap<>();
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = random.nextInt(8); j >= 0; j--) {
+				sb.append((random.nextInt(4) == 0) ? (char)('\u3041' + random.nextInt(83)) : (char)('a' + random.nextInt(6)));
+			}
+			keys.add(sb.toString());
+		}
+		
+		for (int i = 0; i < 100000; i++) {
+			String key = keys.get(random.nextInt(keys.size()));
+			if (random.nextInt(3) == 0) {
+				Integer expected = map.remove(key);
+				assertEquals((expected != null) ? expected : -1, mdat.remove(key));
+			} else {
+				int value = random.nextInt(1 << 20);
+				Integer expected = map.put(key, value);
+				assertEquals((expected != null) ? expected : -1, mdat.put(key, value));
+			}
+		}
+		assertEquals(map.size(), mdat.size());
+		
+		DoubleArrayTrie dat = mdat.freeze();
+		for (String key : keys) {
+			int expected = map.getOrDefault(key, -1);
+			assertEquals(expected, mdat.get(key));
+			assertEquals(expected, dat.get(key));
+		}
+		
+		// A predictive search walks every unit, so it finds no key other than the live ones.
+		Map<String, Integer> found = new HashMap<>();
+		dat.predictiveSearch("", (key, length, value) -> {
+			found.put(DoubleArrayTrie.unescapeKey(key, 0, length), value);
+			return true;
+		});
+		assertEquals(map, found);
+		
+		MutableDoubleArrayTrie copy = new MutableDoubleArrayTrie(dat);
+		assertEquals(map.size(), copy.size());
+		for (Map.Entry<String, Integer> entry : map.entrySet()) {
+			assertEquals(entry.getValue().intValue(), copy.get(entry.getKey()));
+		}
+		
+		for (String key : map.keySet()) {
+			mdat.remove(key);
+		}
+		assertEquals(0, mdat.size());
+		assertEquals(1, TrieStats.of(mdat.freeze()).nodes());
+	}
+	
+	@Test
+	void testLarge() {
+		Random random = new Random(5L);
+		MutableDoubleArrayTrie mdat = new MutableDoubleArrayTrie();
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; mdat.unitSize() <= 3 << 20; i++) {
+			String key = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+			keys.add(key);
+			mdat.put(key, i);
+		}
+		for (int i = 0; i < keys.size(); i += 3) {
+			mdat.remove(keys.get(i));
+		}
+		
+		// Offsets past the first 2M units must keep their low 8 bits zero to be copied as they are.
+		int[] units = mdat.toArray();
+		assertTrue(units.length > 1 << 21);
+		DoubleArrayTrie dat = DoubleArrayTrie.wrap(units);
+		assertEquals(units.length, dat.size());
+		for (int i = 0; i < keys.size(); i++) {
+			int expected = (i % 3 == 0) ? -1 : i;
+			assertEquals(expected, mdat.get(keys.get(i)));
+			assertEquals(expected, dat.get(keys.get(i)));
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TailDoubleArrayTrieTest {
+	@Test
+	void test() throws IOException {
+		TailDoubleArrayTrie.Builder tb = new TailDoubleArrayTrie.Builder();
+		tb.put("ALGOL", 1);
+		tb.put("ANSI", 2);
+		tb.put("ARCO", 3);
+		tb.put("ARPA", 4);
+		tb.put("ARPANET", 5);
+		tb.put("ASCII", 6);
+		tb.put("ASCII", 7);
+		tb.put("A\0B", 8);
+		tb.put("\u65E5\u672C", 9);
+		tb.put("\u65E5\u672C\u8A9E\uD842\uDFB7", 10);
+		TailDoubleArrayTrie tail = tb.build();
+		
+		assertEquals(9, tail.size());
+		assertEquals(1, tail.get("ALGOL"));
+		assertEquals(2, tail.get("ANSI"));
+		assertEquals(3, tail.get("ARCO"));
+		assertEquals(4, tail.get("ARPA"));
+		assertEquals(5, tail.get("ARPANET"));
+		assertEquals(6, tail.get("ASCII"));
+		assertEquals(8, tail.get("A\0B"));
+		assertEquals(9, tail.get("\u65E5\u672C"));
+		assertEquals(10, tail.get("\u65E5\u672C\u8A9E\uD842\uDFB7"));
+		assertEquals(-1, tail.get("A"));
+		assertEquals(-1, tail.get("ALGO"));
+		assertEquals(-1, tail.get("ALGOLX"));
+		assertEquals(-1, tail.get("ARPAN"));
+		assertEquals(-1, tail.get("\u65E5\u672C\u8A9E"));
+		assertEquals(-1, tail.get(""));
+		assertEquals(5, tail.get("xARPANETx", 1, 8));
+		
+		byte[] data = "xxA\0B\u65E5\u672C".getBytes(StandardCharsets.UTF_8);
+		assertEquals(8, tail.get(data, 2, 3));
+		assertEquals(9, tail.get(data, 5, 6));
+		assertEquals(-1, tail.get(data, 2, 2));
+		assertThrows(IndexOutOfBoundsException.class, () -> tail.get(data, 2, data.length));
+		
+		assertArrayEquals(new int[] { 4, 5 }, tail.findByCommonPrefix("ARPANETS").toArray());
+		assertArrayEquals(new int[] { 4 }, tail.findByCommonPrefix("ARPANE").toArray());
+		assertArrayEquals(new int[] { 9, 10 }, tail.findByCommonPrefix("\u65E5\u672C\u8A9E\uD842\uDFB7!").toArray());
+		assertArrayEquals(new int[] { 8 }, tail.findByCommonPrefix(data, 2, data.length - 2).toArray());
+		
+		List<Integer> lengths = new ArrayList<>();
+		tail.commonPrefixSearch("\u65E5\u672C\u8A9E\uD842\uDFB7!", (value, length) -> lengths.add(length));
+		assertEquals(2, lengths.size());
+		assertEquals(2, (int)lengths.get(0));
+		assertEquals(5, (int)lengths.get(1));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		tail.writeTo(out);
+		TailDoubleArrayTrie loaded = TailDoubleArrayTrie.load(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(tail, loaded);
+		assertEquals(5, loaded.get("ARPANET"));
+		
+		Path path = Files.createTempFile("dartsclone", ".tail");
+		try {
+			try (OutputStream fout = Files.newOutputStream(path)) {
+				tail.writeTo(fout);
+			}
+			TailDoubleArrayTrie mapped = TailDoubleArrayTrie.open(path);
+			assertEquals(tail, mapped);
+			assertEquals(10, mapped.get("\u65E5\u672C\u8A9E\uD842\uDFB7"));
+		} finally {
+			Files.delete(path);
+		}
+		
+		byte[] broken = out.toByteArray();
+		assertThrows(IOException.class, () -> TailDoubleArrayTrie.load(new ByteArrayInputStream(broken, 0, broken.length - 1)));
+	}
+	
+	@Test
+	void testMany() {
+		TailDoubleArrayTrie.Builder tb = new TailDoubleArrayTrie.Builder();
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		
+		Random random = new Random(43L);
+		List<String> list = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			String key = "https://example.com/" + Integer.toString(random.nextInt(1000), 36) + "/" + Integer.toString(random.nextInt(), 36);
+			tb.put(key, i);
+			dab.put(key, i);
+			list.add(key);
+		}
+		TailDoubleArrayTrie tail = tb.build();
+		DoubleArrayTrie dat = dab.build();
+		assertTrue(tail.recordSize() > 0);
+		
+		for (String key : list) {
+			assertEquals(dat.get(key), tail.get(key), key);
+			assertEquals(-1, tail.get(key + "/"));
+			String shorter = key.substring(0, key.length() - 1);
+			assertEquals(dat.get(shorter), tail.get(shorter), shorter);
+			assertArrayEquals(dat.findByCommonPrefix(key + "/x").toArray(), tail.findByCommonPrefix(key + "/x").toArray());
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Hidekatsu Izuno <hidekatsu.izuno@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.dartsclone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TrieStatsTest {
+	@Test
+	void test() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		dab.put("a", 1);
+		dab.put("ab", 2);
+		dab.put("xyz", 3);
+		dab.put("yyz", 3);
+		dab.put("\u3042", 4);
+		DoubleArrayTrie dat = dab.build();
+		
+		TrieStats stats = TrieStats.of(dat);
+		assertEquals(dat.size(), stats.units());
+		assertEquals(5, stats.keys());
+		assertEquals(stats.units(), stats.usedUnits() + stats.unusedUnits());
+		assertTrue(stats.fillRatio() > 0.0 && stats.fillRatio() <= 1.0);
+		assertEquals(4.0 * dat.size() / 5, stats.bytesPerKey(), 1e-9);
+		assertArrayEquals(new long[] { 0, 1, 1, 3 }, stats.depthHistogram());
+		
+		// "yz" with its leaf is shared by "xyz" and "yyz".
+		assertEquals(1, stats.sharedNodes());
+		assertEquals(1, stats.sharedEdges());
+		assertTrue(stats.sharingRatio() > 1.0);
+		assertEquals(4, stats.leaves());
+		
+		long[] fanOuts = stats.fanOutHistogram();
+		long nodes = 0;
+		long edges = 0;
+		for (int i = 0; i < fanOuts.length; i++) {
+			nodes += fanOuts[i];
+			edges += i * fanOuts[i];
+		}
+		assertEquals(stats.nodes(), nodes);
+		assertEquals(stats.nodes() - 1 + stats.sharedEdges(), edges);
+		assertTrue(stats.toString().contains("keys:             5"));
+	}
+	
+	@Test
+	void testUnshared() {
+		DoubleArrayTrie.Builder dab = new DoubleArrayTrie.Builder();
+		Random random = new Random(7L);
+		for (int i = 0; i < 10000; i++) {
+			dab.put(Integer.toString(random.nextInt(), 36), i % 10);
+		}
+		
+		TrieStats shared = TrieStats.of(DoubleArrayTrie.wrap(dab.toArray(true)));
+		TrieStats unshared = TrieStats.of(DoubleArrayTrie.wrap(dab.toArray(false)));
+		assertEquals(shared.keys(), unshared.keys());
+		assertArrayEquals(shared.depthHistogram(), unshared.depthHistogram());
+		assertEquals(0, unshared.sharedNodes());
+		assertEquals(1.0, unshared.sharingRatio(), 1e-9);
+		assertTrue(shared.sharedNodes() > 0);
+		assertTrue(shared.units() < unshared.units());
+		assertTrue(shared.usedUnits() <= shared.units());
+		
+		assertEquals(0, TrieStats.of(new DoubleArrayTrie.Builder().build()).keys());
+	}
+}